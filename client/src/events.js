@@ -13,12 +13,18 @@ export const LOGIN = 'LOGIN';
 // fired when player successfully logged in
 export const LOGGED_IN = 'LOGGED_IN';
 
+// fired when server could not add the player to any game
+export const LOGIN_REFUSED = 'LOGIN_REFUSED';
+
 // fired when player data updates
 export const PLAYER_DATA_UPDATED = 'PLAYER_DATA_UPDATED';
 
 // fired when server sends a list of cells
 export const CELL_LIST = 'CELL_LIST';
 
+// fired when server sends run-length encoded alive cells of a part of the board
+export const GRID_SNAPSHOT = 'GRID_SNAPSHOT';
+
 // fired when server sends current player id
 export const PLAYER_IDENTITY = 'PLAYER_IDENTITY';
 
@@ -56,4 +62,8 @@ export const TO_MAIN_MENU = 'TO_MAIN_MENU';
 export const NEW_GAME = 'NEW_GAME';
 
 // fired when player wants to relogin
-export const REPEAT_LOGIN = 'REPEAT_LOGIN';
\ No newline at end of file
+export const REPEAT_LOGIN = 'REPEAT_LOGIN';
+
+// fired when the local simulation diverged from the server
+// and the whole state of the game should be sent again
+export const RESYNC_REQUEST = 'RESYNC_REQUEST';
\ No newline at end of file
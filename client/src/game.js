@@ -3,7 +3,8 @@ import {rectRenderFunction as renderFunction} from './renderer';
 import {
   CELL_LIST, MAP_DATA, PLACE_SHAPE, PLAYER_DATA_UPDATED, PLAYER_IDENTITY,
   PLAYER_REMOVED, SHAPE_PLACED, PLAYER_ADDED, PLAYER_POINTS,
-  SHAPE_SELECTED, TICK_DATA, PLAYER_DATA, TIME_REMAINING, GAME_ENDED
+  SHAPE_SELECTED, TICK_DATA, PLAYER_DATA, TIME_REMAINING, GAME_ENDED,
+  RESYNC_REQUEST, GRID_SNAPSHOT
 } from './events';
 import {notify, off, on} from './event-bus';
 import {assertIsArray, assertIsNumber, assertIsObject} from './assert';
@@ -29,6 +30,8 @@ export const createGame = sketch => {
 
   const FPS = 60,
     cellSize = 10,
+    // the server sends the whole board to a player at most every 40 iterations
+    RESYNC_RETRY_STEPS = 50,
     playerData = {};
 
   let simulation = createSimulation(0, 0, {}),
@@ -38,7 +41,8 @@ export const createGame = sketch => {
     simulationSteps = -1,
     framesRendered = 0,
     selectedShape = undefined,
-    firstMapData = false;
+    firstMapData = false,
+    resyncRequestedAt = -1;
 
 
   const game = {};
@@ -123,6 +127,25 @@ export const createGame = sketch => {
     }
   };
 
+  /**
+   * Snapshots of the whole board follow map data, the simulation is recreated from them.
+   * Other snapshots replace the current state of a part of the board.
+   */
+  const onGridSnapshot = snapshot => {
+    assertIsObject(snapshot);
+    if (!firstMapData) {
+      simulation.replaceCells(snapshot.fromIndex, snapshot.toIndex, snapshot.runs);
+      return;
+    }
+    snapshot.runs.forEach(({index, length, ownerId}) => {
+      for (let i = index; i < index + length; i++) {
+        simulation.setCellState({x: i % width, y: Math.floor(i / width)}, true, ownerId);
+      }
+    });
+    advanceSimulation();
+    firstMapData = false;
+  };
+
   const onTickData = data => {
     assertIsObject(data);
     if (simulationSteps === -1) {
@@ -130,6 +153,11 @@ export const createGame = sketch => {
     }
     advanceSimulation();
     recentlyClicked = false;
+    if (data.checksum !== undefined && data.checksum !== simulation.getChecksum()
+      && (resyncRequestedAt === -1 || simulationSteps - resyncRequestedAt >= RESYNC_RETRY_STEPS)) {
+      resyncRequestedAt = simulationSteps;
+      notify(RESYNC_REQUEST);
+    }
   };
 
   const onShapeSelected = shape => {
@@ -149,8 +177,11 @@ export const createGame = sketch => {
     assertIsObject(data);
     width = data.width;
     height = data.height;
-    simulation = createSimulation(width, height, playerData);
+    simulation = createSimulation(width, height, playerData, data.rule);
     simulation.init();
+    // cells which follow are the current state, not the next one
+    firstMapData = true;
+    resyncRequestedAt = -1;
   };
 
   /**
@@ -259,6 +290,7 @@ export const createGame = sketch => {
   };
 
   on(CELL_LIST, onCellList);
+  on(GRID_SNAPSHOT, onGridSnapshot);
   on(PLAYER_IDENTITY, onPlayerIdentity);
   on(MAP_DATA, onMapData);
   on(TICK_DATA, onTickData);
@@ -272,6 +304,7 @@ export const createGame = sketch => {
 
   game.unregister = () => {
     off(CELL_LIST, onCellList);
+    off(GRID_SNAPSHOT, onGridSnapshot);
     off(PLAYER_IDENTITY, onPlayerIdentity);
     off(MAP_DATA, onMapData);
     off(TICK_DATA, onTickData);
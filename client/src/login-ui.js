@@ -1,5 +1,5 @@
 import {notify, on} from './event-bus';
-import {LOGGED_IN, LOGIN, TO_MAIN_MENU} from './events';
+import {LOGGED_IN, LOGIN, LOGIN_REFUSED, TO_MAIN_MENU} from './events';
 
 const login = () => {
   const name = document.getElementById('name').value.trim();
@@ -10,6 +10,17 @@ const login = () => {
   notify(LOGIN, name);
 };
 
+const showLoginRefused = reason => {
+  const dom = document.getElementById('login');
+  let error = document.getElementById('login-error');
+  if (!error) {
+    error = document.createElement('p');
+    error.setAttribute('id', 'login-error');
+    dom.appendChild(error);
+  }
+  error.textContent = reason;
+};
+
 const destroyLogin = () => {
   document.getElementById('login').innerHTML = '';
   document.getElementById('login-container').classList.add('hidden');
@@ -40,6 +51,7 @@ export const createLoginUi = () => {
   };
 
   on(LOGGED_IN, destroyLogin);
+  on(LOGIN_REFUSED, showLoginRefused);
   on(TO_MAIN_MENU, loginUi.createLoginView);
 
   return loginUi;
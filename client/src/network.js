@@ -4,7 +4,8 @@ import {
   PLAYER_IDENTITY, PLAYER_POINTS,
   SHAPE_PLACED, PLAYER_ADDED,
   TICK_DATA, PLAYER_REMOVED,
-  TIME_REMAINING, REPEAT_LOGIN
+  TIME_REMAINING, REPEAT_LOGIN, RESYNC_REQUEST,
+  GRID_SNAPSHOT, LOGIN_REFUSED
 } from './events';
 import {assertIsArray, assertIsString} from './assert';
 
@@ -16,7 +17,9 @@ const messageTypeMarkers = {
   [TIME_REMAINING]: 7,
   [PLAYER_ADDED]: 9,
   [PLAYER_REMOVED]: 10,
-  [PLAYER_POINTS]: 11
+  [PLAYER_POINTS]: 11,
+  [GRID_SNAPSHOT]: 12,
+  [LOGIN_REFUSED]: 13
 };
 
 let webSocket = null;
@@ -28,6 +31,11 @@ const onCellList = msg => {
   notify(CELL_LIST, cellList);
 };
 
+const onGridSnapshot = msg => {
+  const snapshot = handleByteGridSnapshot(msg);
+  notify(GRID_SNAPSHOT, snapshot);
+};
+
 const onMapData = msg => {
   const data = handleByteMapData(msg);
   notify(MAP_DATA, data);
@@ -39,6 +47,11 @@ const onPlayerIdentity = msg => {
   notify(PLAYER_IDENTITY, playerId);
 };
 
+const onLoginRefused = msg => {
+  const reason = convertBytesToString(msg.slice(1));
+  notify(LOGIN_REFUSED, reason);
+};
+
 const onTickData = msg => {
   const data = handleByteTickData(msg);
   notify(TICK_DATA, data);
@@ -70,12 +83,18 @@ const handleByteMessage = msg => {
     case messageTypeMarkers[CELL_LIST]:
       onCellList(msg);
       break;
+    case messageTypeMarkers[GRID_SNAPSHOT]:
+      onGridSnapshot(msg);
+      break;
     case messageTypeMarkers[MAP_DATA]:
       onMapData(msg);
       break;
     case messageTypeMarkers[PLAYER_IDENTITY]:
       onPlayerIdentity(msg);
       break;
+    case messageTypeMarkers[LOGIN_REFUSED]:
+      onLoginRefused(msg);
+      break;
     case messageTypeMarkers[TICK_DATA]:
       onTickData(msg);
       break;
@@ -140,6 +159,38 @@ const handleByteCellList = data => {
   return cells;
 };
 
+/**
+ * Snapshot contains indices of the first and past the last cell, followed by runs
+ * of alive cells. Every run is three unsigned varints: number of dead cells before the run,
+ * number of alive cells in the run and owner of these cells.
+ */
+const handleByteGridSnapshot = msg => {
+  const fromIndex = convertBytesToInt32(msg.slice(1, 5));
+  const toIndex = convertBytesToInt32(msg.slice(5, 9));
+  const runs = [];
+  let offset = 9;
+  let index = fromIndex;
+  const readVarint = () => {
+    let value = 0;
+    let shift = 0;
+    let byte;
+    do {
+      byte = msg[offset++];
+      value |= (byte & 0x7F) << shift;
+      shift += 7;
+    } while (byte & 0x80);
+    return value | 0;
+  };
+  while (offset < msg.length) {
+    index += readVarint();
+    const length = readVarint();
+    const ownerId = readVarint();
+    runs.push({index, length, ownerId});
+    index += length;
+  }
+  return {fromIndex, toIndex, runs};
+};
+
 const handleBytePlayerIdentity = msg => {
   return convertBytesToInt32(msg.slice(1));
 };
@@ -147,14 +198,20 @@ const handleBytePlayerIdentity = msg => {
 const handleByteMapData = msg => {
   return {
     width: convertBytesToInt32(msg.slice(1, 5)),
-    height: convertBytesToInt32(msg.slice(5))
+    height: convertBytesToInt32(msg.slice(5, 9)),
+    rule: convertBytesToString(msg.slice(9))
   };
 };
 
 const handleByteTickData = msg => {
-  return {
-    iterations: convertBytesToInt32(msg.slice(1))
+  const data = {
+    iterations: convertBytesToInt32(msg.slice(1, 5))
   };
+  // checksum is optional
+  if (msg.length >= 9) {
+    data.checksum = convertBytesToInt32(msg.slice(5, 9));
+  }
+  return data;
 };
 
 const handleByteTimeRemaining = msg => {
@@ -247,6 +304,26 @@ const onShapePlaced = indices => {
   webSocket.send(getBytesClickMessage(indices));
 };
 
+/**
+ * Requests the state of chunks from fromChunk (inclusive) to toChunk (exclusive),
+ * or of the whole board if no range is given.
+ */
+const onResyncRequest = range => {
+  if (!connected) {
+    return;
+  }
+  if (!range) {
+    webSocket.send(new Uint8Array([4]).buffer);
+    return;
+  }
+  const buffer = new ArrayBuffer(9);
+  const view = new DataView(buffer);
+  view.setUint8(0, 4);
+  view.setInt32(1, range.fromChunk, true);
+  view.setInt32(5, range.toChunk, true);
+  webSocket.send(buffer);
+};
+
 // this._pingMessage = new Uint8Array([3]).buffer;
 
 export const createNetworkLayer = webSocketPath => {
@@ -257,6 +334,7 @@ export const createNetworkLayer = webSocketPath => {
   on(LOGIN, onLogin);
   on(SHAPE_PLACED, onShapePlaced);
   on(REPEAT_LOGIN, onRepeatLogin);
+  on(RESYNC_REQUEST, onResyncRequest);
 
   network.connect = () => {
     openConnection(webSocketPath);
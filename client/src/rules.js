@@ -14,7 +14,7 @@
  */
 import {assertIsString} from './assert';
 
-const ruleCreator = ruleString => {
+export const ruleCreator = ruleString => {
   assertIsString(ruleString);
   const tokens = ruleString.split('/');
   const birthNumbers = extractNumbers(tokens[0]);
@@ -1,12 +1,29 @@
 import {cellCreator as createCell} from './cell';
-import {basicRule} from './rules';
+import {basicRule, ruleCreator} from './rules';
 import {convertIntToHexColor, throwError} from './utils';
-import {assertIsArray, assertIsBoolean, assertIsNumber, assertIsObject} from './assert';
+import {assertIsArray, assertIsBoolean, assertIsNumber, assertIsObject, assertIsString} from './assert';
 
-const validateConstructorArguments = (width, height, playerData) => {
+const validateConstructorArguments = (width, height, playerData, ruleString) => {
   assertIsNumber(width);
   assertIsNumber(height);
   assertIsObject(playerData);
+  if (ruleString !== undefined) {
+    assertIsString(ruleString);
+  }
+};
+
+/**
+ * Hash of an alive cell at a given index, owned by a given owner.
+ * Has to be the same as Grid.cellHash on the server.
+ */
+export const cellHash = (index, ownerId) => {
+  let hash = (Math.imul(index, 0x9E3779B1) + ownerId) | 0;
+  hash ^= hash >>> 16;
+  hash = Math.imul(hash, 0x85EBCA6B);
+  hash ^= hash >>> 13;
+  hash = Math.imul(hash, 0xC2B2AE35);
+  hash ^= hash >>> 16;
+  return hash | 0;
 };
 
 const mode = ownerIds => {
@@ -29,14 +46,19 @@ const mode = ownerIds => {
 
 /**
  * Object responsible for the simulation of game of life.
+ * ruleString is the rule sent by the server (eg. B3/S23), basic rule is used
+ * when it is not given.
  */
-export const createSimulation = (width, height, playerData) => {
-  validateConstructorArguments(width, height, playerData);
+export const createSimulation = (width, height, playerData, ruleString) => {
+  validateConstructorArguments(width, height, playerData, ruleString);
+  const rule = ruleString ? ruleCreator(ruleString) : basicRule;
 
   const cells = {};
   let activeCells = {};
   let nextCells = {};
   const defaultOwnerId = 0;
+  // xor of hashes of all alive cells, the same as the server's checksum
+  let checksum = 0;
 
   const simulation = {};
 
@@ -79,6 +101,34 @@ export const createSimulation = (width, height, playerData) => {
     }
   };
 
+  /**
+   * Replaces the current state of cells from fromIndex (inclusive) to toIndex (exclusive)
+   * with a part of the server's board. Cells in the given runs are alive, other cells
+   * in the range are dead. Unlike setCellState, this changes the current generation,
+   * which is the generation the server encoded the snapshot from.
+   * @param fromIndex
+   * @param toIndex
+   * @param runs runs of alive cells, {index, length, ownerId}
+   */
+  simulation.replaceCells = (fromIndex, toIndex, runs) => {
+    assertIsNumber(fromIndex);
+    assertIsNumber(toIndex);
+    assertIsArray(runs);
+    validateInitialized();
+    let index = fromIndex;
+    runs.forEach(run => {
+      for (; index < run.index; index++) {
+        replaceCell(index, false, cells[getPositionKey(getPosition(index))].getOwnerId());
+      }
+      for (; index < run.index + run.length; index++) {
+        replaceCell(index, true, run.ownerId);
+      }
+    });
+    for (; index < toIndex; index++) {
+      replaceCell(index, false, cells[getPositionKey(getPosition(index))].getOwnerId());
+    }
+  };
+
   simulation.update = () => {
     validateInitialized();
     for (const pos in activeCells) {
@@ -86,7 +136,7 @@ export const createSimulation = (width, height, playerData) => {
         const cell = activeCells[pos];
         const {x, y} = cell.getPosition();
         const aliveNeighbours = getAliveNeighbourCells(x, y);
-        const state = basicRule(aliveNeighbours.length, cell.isAlive());
+        const state = rule(aliveNeighbours.length, cell.isAlive());
         if (state !== 0) {
           const strongestOwnerId = getStrongestOwnerId(aliveNeighbours);
           simulation.setCellState(
@@ -111,6 +161,10 @@ export const createSimulation = (width, height, playerData) => {
     }
   };
 
+  simulation.getChecksum = () => {
+    return checksum;
+  };
+
   simulation.setPlayerData = newPlayerData => {
     assertIsObject(newPlayerData);
     Object.assign(playerData, newPlayerData);
@@ -127,16 +181,45 @@ export const createSimulation = (width, height, playerData) => {
     for (const pos in nextCells) {
       if (nextCells.hasOwnProperty(pos)) {
         const oldCell = nextCells[pos];
-        const c = cells[pos];
-        c.setAlive(oldCell.isAlive());
-        c.setOwnerId(oldCell.getOwnerId());
-        c.setColor(getColor(oldCell.getOwnerId()));
-        addToActive(c);
+        applyCellState(cells[pos], oldCell.isAlive(), oldCell.getOwnerId());
       }
     }
     nextCells = {};
   };
 
+  /**
+   * Changes the current state of a cell, if it differs from a given one.
+   */
+  const replaceCell = (index, alive, ownerId) => {
+    const c = cells[getPositionKey(getPosition(index))];
+    if (c.isAlive() !== alive || (alive && c.getOwnerId() !== ownerId)) {
+      applyCellState(c, alive, ownerId);
+    }
+  };
+
+  /**
+   * Sets the current state of a cell, keeps the checksum up to date
+   * and marks the cell and its neighbours as active.
+   */
+  const applyCellState = (c, alive, ownerId) => {
+    const {x, y} = c.getPosition();
+    const index = x + (y * width);
+    if (c.isAlive()) {
+      checksum ^= cellHash(index, c.getOwnerId());
+    }
+    if (alive) {
+      checksum ^= cellHash(index, ownerId);
+    }
+    c.setAlive(alive);
+    c.setOwnerId(ownerId);
+    c.setColor(getColor(ownerId));
+    addToActive(c);
+  };
+
+  const getPosition = index => {
+    return {x: index % width, y: Math.floor(index / width)};
+  };
+
   /**
    * Transforms the position of a cell into the key used in maps
    * containing the cells. The position is wrapped around the grid.
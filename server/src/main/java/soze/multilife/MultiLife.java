@@ -67,8 +67,11 @@ public class MultiLife {
     this.eventBus = new EventBusImpl();
     GameManager gameManager = new GameManager(cfgFactory.getGameRunnerConfiguration());
     GameFactory gameFactory = new GameFactory(
-      cfgFactory.getGameConfiguration()
+      cfgFactory.getGameConfiguration(),
+      cfgFactory.getGameRunnerConfiguration(),
+      gameManager.getTickPool()
     );
+    gameFactory.restoreGames().forEach(gameManager::addGame);
     this.lobby = new Lobby(eventBus, gameManager, gameFactory);
 
     this.connectionFactory = new ConnectionFactory(eventBus);
@@ -18,6 +18,9 @@ public class Configuration
   private static final String GAME_DEFAULT_WIDTH = "gameDefaultWidth";
   private static final String GAME_DEFAULT_HEIGHT = "gameDefaultHeight";
   private static final String GAME_ITERATION_INTERVAL = "gameIterationInterval";
+  private static final String GAME_RULES = "gameRules";
+  private static final String GAME_GRID_ENGINE = "gameGridEngine";
+  private static final String GAME_INITIAL_PATTERN = "gameInitialPattern";
 
   private static final String METRICS_CONFIGURATION = "METRICS_CONFIGURATION";
   private static final String CALCULATE_METRICS_INTERVAL = "calculateMetricsInterval";
@@ -38,6 +41,16 @@ public class Configuration
 
   private static final String GAME_RUNNER_CONFIGURATION = "GAME_RUNNER_CONFIGURATION";
   private static final String GAMES_PER_THREAD = "gamesPerThread";
+  private static final String PARALLEL_GRID_THRESHOLD = "parallelGridThreshold";
+  private static final String TICK_CHECKSUM_ENABLED = "tickChecksumEnabled";
+  private static final String OFF_HEAP_BUDGET = "offHeapBudget";
+  private static final String GAME_STATE_DIRECTORY = "gameStateDirectory";
+  private static final String TICK_OVERRUN_POLICY = "tickOverrunPolicy";
+  private static final String TICK_THREADS = "tickThreads";
+  private static final String VIRTUAL_THREADS_ENABLED = "virtualThreadsEnabled";
+  private static final String REBALANCE_INTERVAL = "rebalanceInterval";
+  private static final String MESSAGE_BUFFER_SIZE = "messageBufferSize";
+  private static final String MESSAGE_OVERFLOW_POLICY = "messageOverflowPolicy";
 
   private static final Multimap<String, String> ALL_DEFAULT_PROPERTIES;
 
@@ -48,6 +61,9 @@ public class Configuration
     defaultProperties.put(GAME_CONFIGURATION, GAME_MAX_PLAYERS_PER_GAME + " = " + 4);
     defaultProperties.put(GAME_CONFIGURATION, GAME_DEFAULT_WIDTH + " = " + 50);
     defaultProperties.put(GAME_CONFIGURATION, GAME_DEFAULT_HEIGHT + " = " + 50);
+    defaultProperties.put(GAME_CONFIGURATION, GAME_RULES + " = BASIC");
+    defaultProperties.put(GAME_CONFIGURATION, GAME_GRID_ENGINE + " = SCALAR");
+    defaultProperties.put(GAME_CONFIGURATION, GAME_INITIAL_PATTERN + " = ");
     defaultProperties.put(METRICS_CONFIGURATION, METRICS_ENABLED + " = " + false);
     defaultProperties.put(METRICS_CONFIGURATION, CALCULATE_METRICS_INTERVAL + " = " + (1000 * 60));
     defaultProperties.put(METRICS_CONFIGURATION, METRICS_PUSH_UPDATE_RATE + " = " + (1000 * 60));
@@ -61,6 +77,16 @@ public class Configuration
     defaultProperties.put(SERVER_CONFIGURATION, EXTERNAL_STATIC_FILES_PATH + " = ");
     defaultProperties.put(GAME_RUNNER_CONFIGURATION, GAMES_PER_THREAD + " = 20");
     defaultProperties.put(GAME_RUNNER_CONFIGURATION, GAME_ITERATION_INTERVAL + " = " + 250);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, PARALLEL_GRID_THRESHOLD + " = " + (512 * 512));
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, TICK_CHECKSUM_ENABLED + " = " + true);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, OFF_HEAP_BUDGET + " = " + 0);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, GAME_STATE_DIRECTORY + " = ");
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, TICK_OVERRUN_POLICY + " = SKIP");
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, TICK_THREADS + " = " + 0);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, VIRTUAL_THREADS_ENABLED + " = " + false);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, REBALANCE_INTERVAL + " = " + 5000);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, MESSAGE_BUFFER_SIZE + " = " + 256);
+    defaultProperties.put(GAME_RUNNER_CONFIGURATION, MESSAGE_OVERFLOW_POLICY + " = BACKPRESSURE");
     ALL_DEFAULT_PROPERTIES = ImmutableListMultimap.copyOf(defaultProperties);
   }
 
@@ -90,10 +116,62 @@ public class Configuration
     return configurationLoader.getInt(GAME_DEFAULT_HEIGHT);
   }
 
+  public String getRules() {
+    return configurationLoader.getString(GAME_RULES);
+  }
+
+  public String getGridEngine() {
+    return configurationLoader.getString(GAME_GRID_ENGINE);
+  }
+
+  public String getInitialPattern() {
+    return configurationLoader.getString(GAME_INITIAL_PATTERN);
+  }
+
   public int getTickRate() {
     return configurationLoader.getInt(GAME_ITERATION_INTERVAL);
   }
 
+  public int getParallelGridThreshold() {
+    return configurationLoader.getInt(PARALLEL_GRID_THRESHOLD);
+  }
+
+  public boolean isTickChecksumEnabled() {
+    return configurationLoader.getBoolean(TICK_CHECKSUM_ENABLED);
+  }
+
+  public long getOffHeapBudget() {
+    return configurationLoader.getLong(OFF_HEAP_BUDGET);
+  }
+
+  public String getGameStateDirectory() {
+    return configurationLoader.getString(GAME_STATE_DIRECTORY);
+  }
+
+  public String getTickOverrunPolicy() {
+    return configurationLoader.getString(TICK_OVERRUN_POLICY);
+  }
+
+  public int getTickThreads() {
+    return configurationLoader.getInt(TICK_THREADS);
+  }
+
+  public boolean isVirtualThreadsEnabled() {
+    return configurationLoader.getBoolean(VIRTUAL_THREADS_ENABLED);
+  }
+
+  public long getRebalanceInterval() {
+    return configurationLoader.getLong(REBALANCE_INTERVAL);
+  }
+
+  public int getMessageBufferSize() {
+    return configurationLoader.getInt(MESSAGE_BUFFER_SIZE);
+  }
+
+  public String getMessageOverflowPolicy() {
+    return configurationLoader.getString(MESSAGE_OVERFLOW_POLICY);
+  }
+
   public boolean isMetricsEnabled() {
     return configurationLoader.getBoolean(METRICS_ENABLED);
   }
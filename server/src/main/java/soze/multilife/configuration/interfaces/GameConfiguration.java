@@ -14,4 +14,22 @@ public interface GameConfiguration {
   public int getGridWidth();
 
   public int getGridHeight();
+
+  /**
+   * Returns rules new games are created with. This is a comma separated list
+   * of rule names or rule strings, each optionally followed by a colon and a weight.
+   * For example "BASIC:3, HIGHLIFE, B2/S/C3:2".
+   */
+  public String getRules();
+
+  /**
+   * Returns name of the engine simulating new games, see GridEngine.
+   */
+  public String getGridEngine();
+
+  /**
+   * Returns path to a file with the pattern new games start with, an RLE file or an image.
+   * If empty, games start with random cells, see {@link #getInitialDensity()}.
+   */
+  public String getInitialPattern();
 }
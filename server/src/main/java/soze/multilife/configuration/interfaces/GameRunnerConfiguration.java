@@ -5,4 +5,64 @@ public interface GameRunnerConfiguration {
   int getGamesPerThread();
 
   int getTickRate();
+
+  /**
+   * Returns the number of cells from which a grid is stepped in parallel
+   * by the {@link soze.multilife.game.GridEngine#PARALLEL} engine. 0 or less disables it.
+   */
+  int getParallelGridThreshold();
+
+  /**
+   * Returns true if tick data sent to clients should contain checksums of the simulation.
+   */
+  boolean isTickChecksumEnabled();
+
+  /**
+   * Returns the number of bytes all games together can keep outside of the Java heap.
+   * If positive, owners of cells are stored off-heap and games which would
+   * exceed this budget cannot be created. 0 or less keeps them on the heap.
+   */
+  long getOffHeapBudget();
+
+  /**
+   * Returns the directory running games are saved to and restored from after a restart.
+   * Empty if games are not saved.
+   */
+  String getGameStateDirectory();
+
+  /**
+   * Returns what containers do when a tick takes longer than the tick rate,
+   * SKIP or CATCH_UP, see {@link soze.multilife.server.gamerunner.TickOverrunPolicy}.
+   */
+  String getTickOverrunPolicy();
+
+  /**
+   * Returns the number of threads games of all containers are run on.
+   * 0 or less uses one thread per available processor.
+   */
+  int getTickThreads();
+
+  /**
+   * Returns true if every game should run on its own virtual thread, instead of
+   * running getGamesPerThread() games on a platform thread. Requires Java 21 or newer,
+   * ignored otherwise.
+   */
+  boolean isVirtualThreadsEnabled();
+
+  /**
+   * Returns how often (in ms) games are moved from containers which take too long
+   * to tick to less loaded containers. 0 or less never moves games.
+   */
+  long getRebalanceInterval();
+
+  /**
+   * Returns the number of incoming messages buffered for every game between ticks.
+   */
+  int getMessageBufferSize();
+
+  /**
+   * Returns what happens to messages of a game whose buffer is full, BACKPRESSURE or DROP_OLDEST,
+   * see {@link soze.multilife.server.gamerunner.MessageOverflowPolicy}.
+   */
+  String getMessageOverflowPolicy();
 }
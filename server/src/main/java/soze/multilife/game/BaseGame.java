@@ -2,17 +2,23 @@ package soze.multilife.game;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import soze.multilife.game.exceptions.CorruptGameFileException;
 import soze.multilife.game.exceptions.PlayerNotInGameException;
+import soze.multilife.game.rule.Rule;
 import soze.multilife.game.rule.RuleFactory;
 import soze.multilife.messages.incoming.ClickMessage;
 import soze.multilife.messages.incoming.IncomingMessage;
 import soze.multilife.messages.incoming.IncomingType;
+import soze.multilife.messages.incoming.ResyncMessage;
+import soze.multilife.messages.outgoing.GridSnapshot;
+import soze.multilife.messages.outgoing.MapData;
 import soze.multilife.messages.outgoing.OutgoingMessage;
 
 import java.awt.*;
-import java.security.SecureRandom;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An object which handles the simulation ({@link Grid}) and players.
@@ -27,6 +33,12 @@ public class BaseGame implements Game {
    */
   private static final int SIMULATION_PLAYER_ID = 0;
 
+  /**
+   * Minimal number of iterations between two whole boards sent to the same player.
+   * Resync requests sent sooner are ignored, the client asks again if it is still out of sync.
+   */
+  static final int MIN_RESYNC_INTERVAL = 40;
+
   /**
    * Id of this game.
    */
@@ -34,11 +46,6 @@ public class BaseGame implements Game {
 
   private boolean scheduledForRemoval;
 
-  /**
-   * Percent of alive cells spawned on simulation start.
-   */
-  private final float initialDensity;
-
   /**
    * Players already in-game.
    */
@@ -71,7 +78,7 @@ public class BaseGame implements Game {
   /**
    * Cells clicked by players this iteration.
    */
-  private final Set<Cell> clickedCells = new HashSet<>();
+  private final ClickBuffer clickedCells;
 
   /**
    * A set of playerIds who clicked cells this iteration.
@@ -84,36 +91,98 @@ public class BaseGame implements Game {
    */
   private int iterations = 0;
 
+  /**
+   * Period of the cycle the grid was replaying after the last iteration, 0 if none.
+   */
+  private int cyclePeriod = 0;
+
   /**
    * Map of playerId-playerPoints.
    */
   private final Map<Integer, Integer> playerPoints = new HashMap<>();
 
+  /**
+   * Maps playerId to the iteration in which the player was last sent the whole board.
+   */
+  private final Map<Integer, Integer> lastResyncs = new HashMap<>();
+
+  /**
+   * Game of life rule used by this game.
+   */
+  private final Rule rule;
+
+  /**
+   * File the state of this game is saved to after every iteration, null if it is not saved.
+   */
+  private GameFile file;
+
   BaseGame(int id, float initialDensity, int width, int height, int maxPlayers, long duration) {
+    this(id, initialDensity, width, height, maxPlayers, duration, RuleFactory.getRule("BASIC"), GridEngine.SCALAR);
+  }
+
+  BaseGame(int id, float initialDensity, int width, int height, int maxPlayers, long duration, Rule rule, GridEngine engine) {
+    this(id, InitialPattern.random(width, height, initialDensity), width, height, maxPlayers, duration, rule, engine, null, null);
+  }
+
+  /**
+   * @param pattern alive cells of the AI player the grid starts with, null to start with an empty grid
+   * @param budget  off-heap budget owners of cells are kept in, null to keep them on the heap
+   * @param pool    pool the grid is stepped on by parallel engines, null for the common pool
+   */
+  BaseGame(int id, InitialPattern pattern, int width, int height, int maxPlayers, long duration, Rule rule, GridEngine engine,
+           OffHeapBudget budget, ForkJoinPool pool) {
     this.id = id;
-    this.initialDensity = initialDensity;
-    this.grid = new Grid(width, height, RuleFactory.getRule("BASIC"));
+    this.rule = Objects.requireNonNull(rule);
+    this.grid = new Grid(width, height, rule, Objects.requireNonNull(engine), budget, pool);
+    this.clickedCells = new ClickBuffer(grid.getSize());
     this.maxPlayers = maxPlayers;
     this.duration = duration;
-    init();
+    init(pattern);
   }
 
   /**
    * Spawns initial living cells.
    */
-  private void init() {
-    SecureRandom random = new SecureRandom();
-    for (int i = 0; i < grid.getWidth(); i++) {
-      for (int j = 0; j < grid.getHeight(); j++) {
-        if (random.nextFloat() < initialDensity) {
-          grid.changeState(i, j, true, SIMULATION_PLAYER_ID);
-        }
-      }
+  private void init(InitialPattern pattern) {
+    if (pattern != null) {
+      grid.seed(pattern, SIMULATION_PLAYER_ID);
     }
     addCellStateChangeListeners();
     grid.updateGrid(); // runs the simulation once, so that the first player logging can receive some data
   }
 
+  /**
+   * Restores a game saved in a file. The game keeps saving its state to the file.
+   *
+   * @throws CorruptGameFileException if the saved cells are corrupted
+   */
+  static BaseGame restore(GameFile file, GridEngine engine, OffHeapBudget budget, ForkJoinPool pool) throws IOException {
+    Rule rule = RuleFactory.getRule(file.getRuleString());
+    BaseGame game = new BaseGame(
+      file.getId(), null, file.getWidth(), file.getHeight(), file.getMaxPlayers(), file.getDuration(), rule, engine, budget, pool
+    );
+    try {
+      file.restore(game.grid);
+    } catch (IOException | RuntimeException e) {
+      game.grid.release();
+      throw e;
+    }
+    game.iterations = file.getIterations();
+    game.timePassed = file.getTimePassed();
+    game.playerPoints.putAll(file.getPlayerPoints());
+    game.file = file;
+    return game;
+  }
+
+  /**
+   * Starts saving the state of this game to a given file, after every iteration.
+   */
+  void saveTo(GameFile file) {
+    this.file = Objects.requireNonNull(file);
+    file.writeAllChunks(grid);
+    file.writeState(iterations, timePassed, playerPoints, grid.getChecksum());
+  }
+
   private void addCellStateChangeListeners() {
     grid.onCellDeath((strongestOwnerId) -> {
       if (strongestOwnerId == -1) {
@@ -154,6 +223,7 @@ public class BaseGame implements Game {
     grid.killAll(id);
     players.remove(id);
     playerPoints.remove(id);
+    lastResyncs.remove(id);
   }
 
   /**
@@ -171,15 +241,8 @@ public class BaseGame implements Game {
       return;
     }
     LOG.trace("Player [{}] wants to click on [{}] cells.", id, indices.length);
-    List<Cell> clickableCells = grid.findClickableCells(indices, id);
-    if (clickableCells.size() == indices.length) {
-      for (Cell cell : clickableCells) {
-        if (clickedCells.contains(cell)) {
-          return;
-        }
-      }
+    if (clickedCells.claim(grid, indices, id)) {
       clickedPlayers.add(id);
-      clickedCells.addAll(clickableCells);
     }
   }
 
@@ -191,11 +254,19 @@ public class BaseGame implements Game {
   public void run() {
     updateTime();
     if (!players.isEmpty()) {
-      grid.click(clickedCells);
-      clickedCells.clear();
+      clickedCells.apply(grid);
       clickedPlayers.clear();
       grid.updateGrid();
       iterations++;
+      int period = grid.getCyclePeriod();
+      if (period != cyclePeriod && period != 0) {
+        LOG.debug("Game [{}] repeats every [{}] iterations, replaying them.", id, period);
+      }
+      cyclePeriod = period;
+    }
+    if (file != null) {
+      file.writeChangedChunks(grid);
+      file.writeState(iterations, timePassed, playerPoints, grid.getChecksum());
     }
     if (isOutOfTime()) {
       setScheduledForRemoval(true);
@@ -214,12 +285,62 @@ public class BaseGame implements Game {
     return new HashMap<>(grid.getAllCells());
   }
 
+  public int getChecksum() {
+    return grid.getChecksum();
+  }
+
+  public boolean hasDyingCells() {
+    return rule.getStates() > 2;
+  }
+
+  public int getActiveCellCount() {
+    return grid.getActiveCellCount();
+  }
+
+  public GridSnapshot getSnapshot() {
+    return getSnapshot(0, grid.getChunkCount());
+  }
+
+  public GridSnapshot getSnapshot(int fromChunk, int toChunk) {
+    int size = grid.getSize();
+    int fromIndex = (int) Math.min((long) Math.max(fromChunk, 0) << Grid.CHUNK_BITS, size);
+    int toIndex = (int) Math.min((long) Math.max(toChunk, 0) << Grid.CHUNK_BITS, size);
+    toIndex = Math.max(fromIndex, toIndex);
+    return new GridSnapshot(fromIndex, toIndex, grid.encodeSnapshot(fromIndex, toIndex));
+  }
+
   public void acceptMessage(IncomingMessage message, int playerId) throws PlayerNotInGameException {
     checkContainsPlayer(playerId);
     if (message.getType() == IncomingType.CLICK) {
       ClickMessage msg = (ClickMessage) message;
       click(msg.getIndices(), playerId);
     }
+    if (message.getType() == IncomingType.RESYNC) {
+      resync(players.get(playerId), (ResyncMessage) message);
+    }
+  }
+
+  /**
+   * Sends the state of the simulation to a player, whose simulation diverged.
+   * If the whole board is requested, the client recreates its simulation from it,
+   * otherwise it only replaces the current state of cells of the requested chunks.
+   * A player is sent the state at most once every {@link #MIN_RESYNC_INTERVAL} iterations.
+   */
+  private void resync(Player player, ResyncMessage message) {
+    Integer lastResync = lastResyncs.get(player.getId());
+    if (lastResync != null && iterations - lastResync < MIN_RESYNC_INTERVAL) {
+      LOG.debug("Player [{}] requested a resync [{}] iterations after the last one, ignoring it.",
+        player.getId(), iterations - lastResync);
+      return;
+    }
+    lastResyncs.put(player.getId(), iterations);
+    LOG.debug("Player [{}] requested a resync.", player.getId());
+    if (message.isWholeBoard()) {
+      player.send(new MapData(getWidth(), getHeight(), getRuleString()));
+      player.send(getSnapshot());
+    } else {
+      player.send(getSnapshot(message.getFromChunk(), message.getToChunk()));
+    }
   }
 
   public long getRemainingTime() {
@@ -227,7 +348,7 @@ public class BaseGame implements Game {
   }
 
   public Collection<Cell> getClickedCells() {
-    return new ArrayList<>(clickedCells);
+    return clickedCells.getCells(grid.getWidth());
   }
 
   public int getMaxPlayers() {
@@ -282,6 +403,22 @@ public class BaseGame implements Game {
     setScheduledForRemoval(true);
   }
 
+  /**
+   * Releases owners of cells, off-heap memory is returned to the budget.
+   * The file of the game is deleted, the game will not be restored.
+   */
+  public void release() {
+    grid.release();
+    if (file != null) {
+      try {
+        file.delete();
+      } catch (IOException e) {
+        LOG.warn("Could not delete the file of game [{}].", id, e);
+      }
+      file = null;
+    }
+  }
+
   public int getWidth() {
     return grid.getWidth();
   }
@@ -290,6 +427,10 @@ public class BaseGame implements Game {
     return grid.getHeight();
   }
 
+  public String getRuleString() {
+    return rule.getRuleString();
+  }
+
   public Map<Integer, Player> getPlayers() {
     return new HashMap<>(players);
   }
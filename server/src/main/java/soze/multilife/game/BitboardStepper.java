@@ -0,0 +1,135 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.LookupTableRule;
+
+/**
+ * Computes the next state of 64 cells at once. For every word of the alive
+ * bitset which contains an active cell, the eight neighbour words are read
+ * from the bitset shifted by neighbour offsets and added with bitwise adders,
+ * giving a 4 bit neighbour count for each of the 64 cells. The rule is then
+ * applied to all 64 cells with bitwise operations.
+ * Cells are wrapped the same way as in the {@link Grid}, as if they were an 1D array.
+ * Only cells which change are then handed to the grid, which assigns owners.
+ * Supports rules with two states only.
+ */
+final class BitboardStepper implements Stepper {
+
+  private final int birthMask;
+  private final int surviveMask;
+
+  BitboardStepper(LookupTableRule rule) {
+    if (rule.getStates() != 2) {
+      throw new IllegalArgumentException("Bitboard stepper supports only rules with two states.");
+    }
+    this.birthMask = rule.getBirthMask();
+    this.surviveMask = rule.getSurviveMask();
+  }
+
+  public void step(Grid grid) {
+    long[] active = grid.getActiveCells();
+    long[] awake = grid.getAwakeChunks();
+    for (int chunk = Bits.nextSetBit(awake, 0); chunk >= 0; chunk = Bits.nextSetBit(awake, chunk + 1)) {
+      int end = Math.min((chunk + 1) * Grid.CHUNK_WORDS, active.length);
+      for (int word = chunk * Grid.CHUNK_WORDS; word < end; word++) {
+        if (active[word] != 0) {
+          step(grid, word);
+        }
+      }
+    }
+  }
+
+  private void step(Grid grid, int word) {
+    long changed = findChangedCells(grid, word);
+    long current = grid.getAliveCells()[word];
+    int start = word << 6;
+    while (changed != 0) {
+      int bit = Long.numberOfTrailingZeros(changed);
+      changed &= changed - 1;
+      int index = start + bit;
+      int state = ((current >>> bit) & 1) != 0 ? -1 : 1;
+      grid.changeCell(index, state, grid.findAliveNeighbours(index));
+    }
+  }
+
+  /**
+   * Returns a word in which a bit is set if that active cell of a given word changes
+   * its state in the next iteration. Only reads the grid.
+   */
+  long findChangedCells(Grid grid, int word) {
+    long[] alive = grid.getAliveCells();
+    int size = grid.getSize();
+    int[] neighbourOffsets = grid.getNeighbourOffsets();
+    int start = word << 6;
+    // bits of the neighbour count of every cell
+    long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    for (int offset : neighbourOffsets) {
+      long neighbours = window(alive, size, Math.floorMod(start + offset, size));
+      long c0 = s0 & neighbours;
+      s0 ^= neighbours;
+      long c1 = s1 & c0;
+      s1 ^= c0;
+      long c2 = s2 & c1;
+      s2 ^= c1;
+      s3 |= c2;
+    }
+    long current = alive[word];
+    long next = (~current & matchCounts(birthMask, s0, s1, s2, s3))
+      | (current & matchCounts(surviveMask, s0, s1, s2, s3));
+    return (next ^ current) & grid.getActiveCells()[word];
+  }
+
+  /**
+   * Returns a word in which a bit is set if the neighbour count of that cell
+   * (given as four bit planes) is one of the counts in the mask.
+   */
+  private static long matchCounts(int mask, long s0, long s1, long s2, long s3) {
+    long result = 0;
+    for (int n = 0; n <= 8; n++) {
+      if ((mask & (1 << n)) != 0) {
+        result |= ((n & 1) != 0 ? s0 : ~s0)
+          & ((n & 2) != 0 ? s1 : ~s1)
+          & ((n & 4) != 0 ? s2 : ~s2)
+          & ((n & 8) != 0 ? s3 : ~s3);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns 64 bits of the bitset starting at a given position, wrapping
+   * around the end of the grid. Bit j of the result is bit (position + j) % size.
+   */
+  static long window(long[] words, int size, int position) {
+    if (position + 64 <= size) {
+      return read(words, position);
+    }
+    long result = 0;
+    int bit = 0;
+    while (bit < 64) {
+      int length = Math.min(64 - bit, size - position);
+      long bits = read(words, position);
+      if (length < 64) {
+        bits &= (1L << length) - 1;
+      }
+      result |= bits << bit;
+      bit += length;
+      position = 0;
+    }
+    return result;
+  }
+
+  /**
+   * Reads 64 bits starting at a given position, without wrapping.
+   * Bits past the end of the array are 0.
+   */
+  private static long read(long[] words, int position) {
+    int wordIndex = position >>> 6;
+    int shift = position & 63;
+    long low = words[wordIndex] >>> shift;
+    if (shift == 0 || wordIndex + 1 == words.length) {
+      return low;
+    }
+    return low | (words[wordIndex + 1] << (64 - shift));
+  }
+
+}
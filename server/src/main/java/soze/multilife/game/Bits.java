@@ -0,0 +1,106 @@
+package soze.multilife.game;
+
+import java.util.Arrays;
+
+/**
+ * Static methods operating on bitsets stored in long arrays.
+ * Bit i of the set is bit (i % 64) of the word i / 64.
+ */
+final class Bits {
+
+  private Bits() {
+
+  }
+
+  /**
+   * Returns number of words needed to store given number of bits.
+   */
+  static int wordCount(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  static boolean get(long[] words, int index) {
+    return (words[index >>> 6] & (1L << index)) != 0;
+  }
+
+  static void set(long[] words, int index) {
+    words[index >>> 6] |= 1L << index;
+  }
+
+  static void clear(long[] words, int index) {
+    words[index >>> 6] &= ~(1L << index);
+  }
+
+  static void set(long[] words, int index, boolean value) {
+    if (value) {
+      set(words, index);
+    } else {
+      clear(words, index);
+    }
+  }
+
+  /**
+   * Returns index of the first set bit at or after fromIndex,
+   * or -1 if there is no such bit.
+   */
+  static int nextSetBit(long[] words, int fromIndex) {
+    int wordIndex = fromIndex >>> 6;
+    if (wordIndex >= words.length) {
+      return -1;
+    }
+    long word = words[wordIndex] & (-1L << fromIndex);
+    while (true) {
+      if (word != 0) {
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++wordIndex == words.length) {
+        return -1;
+      }
+      word = words[wordIndex];
+    }
+  }
+
+  /**
+   * Returns index of the first set bit at or after fromIndex and before toIndex,
+   * or -1 if there is no such bit.
+   */
+  static int nextSetBit(long[] words, int fromIndex, int toIndex) {
+    if (fromIndex >= toIndex) {
+      return -1;
+    }
+    int wordIndex = fromIndex >>> 6;
+    int lastWord = Math.min((toIndex - 1) >>> 6, words.length - 1);
+    if (wordIndex > lastWord) {
+      return -1;
+    }
+    long word = words[wordIndex] & (-1L << fromIndex);
+    while (word == 0) {
+      if (++wordIndex > lastWord) {
+        return -1;
+      }
+      word = words[wordIndex];
+    }
+    int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    return index < toIndex ? index : -1;
+  }
+
+  static int cardinality(long[] words) {
+    int count = 0;
+    for (long word : words) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  static void clearAll(long[] words) {
+    Arrays.fill(words, 0L);
+  }
+
+  /**
+   * Clears words from fromWord (inclusive) to toWord (exclusive).
+   */
+  static void clearWords(long[] words, int fromWord, int toWord) {
+    Arrays.fill(words, fromWord, Math.min(toWord, words.length), 0L);
+  }
+
+}
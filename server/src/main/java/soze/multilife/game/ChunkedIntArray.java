@@ -0,0 +1,37 @@
+package soze.multilife.game;
+
+/**
+ * An array of ints split into chunks of consecutive indices. A chunk is allocated
+ * only once a non-zero value is stored in it, and released once it contains
+ * only zeros again, so memory scales with the number of non-zero values
+ * rather than with the size of the array.
+ */
+interface ChunkedIntArray {
+
+  int get(int index);
+
+  void set(int index, int value);
+
+  /**
+   * Sets all values of a chunk to 0, releasing it.
+   */
+  void clearChunk(int chunkIndex);
+
+  /**
+   * Returns true if all values of a chunk are 0.
+   */
+  boolean isChunkEmpty(int chunkIndex);
+
+  int getChunkCount();
+
+  /**
+   * Returns number of chunks which currently hold memory.
+   */
+  int getAllocatedChunkCount();
+
+  /**
+   * Drops all chunks, so their memory can be reclaimed. All values are 0 afterwards.
+   */
+  void free();
+
+}
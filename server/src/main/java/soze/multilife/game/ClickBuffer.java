@@ -0,0 +1,91 @@
+package soze.multilife.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects cells clicked by players during one iteration. Cells which are already claimed
+ * are marked in a bitset of the whole grid, so conflicting clicks are found with a single bit
+ * test per cell, and accepted cells are kept in primitive arrays until they are applied to the grid.
+ * Only bits of accepted cells are cleared after they are applied, so the cost of an iteration
+ * depends on the number of clicked cells and not on the size of the grid.
+ */
+final class ClickBuffer {
+
+  private final long[] claimed;
+  private int[] indices = new int[64];
+  private int[] owners = new int[64];
+  private int count;
+
+  ClickBuffer(int size) {
+    this.claimed = new long[Bits.wordCount(size)];
+  }
+
+  /**
+   * Claims cells with given indices for a player. Either all cells are claimed, or none of them
+   * if any cell is not clickable or was already claimed by an earlier click.
+   *
+   * @param grid    grid the cells belong to
+   * @param indices indices of the clicked cells, wrapped around the grid
+   * @param ownerId id of the player who clicked
+   * @return true if cells were claimed
+   */
+  boolean claim(Grid grid, int[] indices, int ownerId) {
+    for (int i : indices) {
+      int index = grid.findClickableIndex(i);
+      if (index == -1 || Bits.get(claimed, index)) {
+        return false;
+      }
+    }
+    for (int i : indices) {
+      int index = grid.findClickableIndex(i);
+      // the same cell can be repeated within one click
+      if (!Bits.get(claimed, index)) {
+        Bits.set(claimed, index);
+        add(index, ownerId);
+      }
+    }
+    return true;
+  }
+
+  private void add(int index, int ownerId) {
+    if (count == indices.length) {
+      indices = Arrays.copyOf(indices, count * 2);
+      owners = Arrays.copyOf(owners, count * 2);
+    }
+    indices[count] = index;
+    owners[count] = ownerId;
+    count++;
+  }
+
+  /**
+   * Makes all claimed cells alive in the next iteration of the grid and clears this buffer.
+   */
+  void apply(Grid grid) {
+    for (int i = 0; i < count; i++) {
+      grid.click(indices[i], owners[i]);
+      Bits.clear(claimed, indices[i]);
+    }
+    count = 0;
+  }
+
+  /**
+   * Creates cells claimed so far, alive and owned by the player who clicked them.
+   */
+  List<Cell> getCells(int width) {
+    List<Cell> cells = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Cell cell = new Cell(indices[i] % width, indices[i] / width);
+      cell.setIsAlive(true);
+      cell.setOwnerId(owners[i]);
+      cells.add(cell);
+    }
+    return cells;
+  }
+
+  int getCount() {
+    return count;
+  }
+
+}
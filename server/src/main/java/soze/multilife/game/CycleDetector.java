@@ -0,0 +1,271 @@
+package soze.multilife.game;
+
+import java.util.Arrays;
+
+/**
+ * Detects that a grid keeps repeating the same few states, for example when
+ * only still lifes and blinkers are left on the board.
+ * <p>
+ * After every computed generation the checksum and population of the grid are stored.
+ * Once the last period (1, 2 or 3) generations equal the period generations before them,
+ * the grid is considered cyclic and the next period generations are recorded while they are
+ * still computed: cells passed to the transfer and owners passed to callbacks. If the grid
+ * returns to the state at the start of the recording, recorded generations are replayed
+ * instead of being computed, until anything else changes the grid.
+ * <p>
+ * Equal checksums only suggest a cycle, so alive cells and their owners at the start
+ * of the recording are copied and compared with the grid at its end. A collision of checksums
+ * would otherwise replay wrong generations, which clients could not detect.
+ */
+final class CycleDetector {
+
+  static final int MAX_PERIOD = 3;
+
+  private enum State {
+    DETECTING, RECORDING, REPLAYING
+  }
+
+  /**
+   * Pending cells and callbacks of a single generation.
+   */
+  static final class Generation {
+
+    private int[] indices = new int[64];
+    /**
+     * Slot of the owner of every pending cell, shifted left by one. The lowest bit is set
+     * if the cell is alive.
+     */
+    private int[] states = new int[64];
+    private int cellCount;
+    /**
+     * Callbacks in the order they were called, the owner shifted left by one.
+     * The lowest bit is set for births. Points awarded by callbacks can depend
+     * on their order, so deaths and births are replayed interleaved as they were computed.
+     */
+    private long[] callbacks = new long[16];
+    private int callbackCount;
+
+    private void clear() {
+      cellCount = 0;
+      callbackCount = 0;
+    }
+
+    void addCell(int index, boolean alive, int slot) {
+      if (cellCount == indices.length) {
+        indices = Arrays.copyOf(indices, cellCount * 2);
+        states = Arrays.copyOf(states, cellCount * 2);
+      }
+      indices[cellCount] = index;
+      states[cellCount] = (slot << 1) | (alive ? 1 : 0);
+      cellCount++;
+    }
+
+    private void addCallback(int ownerId, boolean birth) {
+      if (callbackCount == callbacks.length) {
+        callbacks = Arrays.copyOf(callbacks, callbackCount * 2);
+      }
+      callbacks[callbackCount++] = ((long) ownerId << 1) | (birth ? 1 : 0);
+    }
+
+    int getCellCount() {
+      return cellCount;
+    }
+
+    int getIndex(int cell) {
+      return indices[cell];
+    }
+
+    boolean isAlive(int cell) {
+      return (states[cell] & 1) != 0;
+    }
+
+    int getSlot(int cell) {
+      return states[cell] >>> 1;
+    }
+
+    int getCallbackCount() {
+      return callbackCount;
+    }
+
+    boolean isBirth(int callback) {
+      return (callbacks[callback] & 1) != 0;
+    }
+
+    int getCallbackOwner(int callback) {
+      return (int) (callbacks[callback] >> 1);
+    }
+
+  }
+
+  /**
+   * Checksums and populations of the last computed generations, the latest at
+   * index (count - 1) % HISTORY.
+   */
+  private static final int HISTORY = MAX_PERIOD * 2;
+  private final int[] checksums = new int[HISTORY];
+  private final int[] populations = new int[HISTORY];
+  private int count;
+
+  /**
+   * Alive cells and slots of their owners at the start of the recording.
+   */
+  private long[] recordedAlive = new long[0];
+  private int[] recordedSlots = new int[0];
+
+  private final Generation[] generations = new Generation[MAX_PERIOD];
+  private State state = State.DETECTING;
+  private int period;
+  /**
+   * Number of generations recorded or replayed in the current period.
+   */
+  private int position;
+
+  CycleDetector() {
+    for (int i = 0; i < generations.length; i++) {
+      generations[i] = new Generation();
+    }
+  }
+
+  boolean isRecording() {
+    return state == State.RECORDING;
+  }
+
+  boolean isReplaying() {
+    return state == State.REPLAYING;
+  }
+
+  /**
+   * Returns period of the cycle being replayed, 0 if the grid is not replaying a cycle.
+   */
+  int getPeriod() {
+    return state == State.REPLAYING ? period : 0;
+  }
+
+  /**
+   * Returns the generation which is currently being recorded.
+   */
+  Generation getRecordedGeneration() {
+    return generations[position];
+  }
+
+  /**
+   * Returns the next generation to replay and moves to the one after it.
+   */
+  Generation nextReplayedGeneration() {
+    Generation generation = generations[position];
+    position = (position + 1) % period;
+    return generation;
+  }
+
+  void recordDeath(int ownerId) {
+    generations[position].addCallback(ownerId, false);
+  }
+
+  void recordBirth(int ownerId) {
+    generations[position].addCallback(ownerId, true);
+  }
+
+  /**
+   * Called after every computed generation with the state of the grid.
+   *
+   * @param alive  alive cells of the grid, not modified
+   * @param owners slots of owners of cells of the grid, not modified
+   */
+  void generationComputed(int checksum, int population, long[] alive, ChunkedIntArray owners) {
+    int index = count % HISTORY;
+    checksums[index] = checksum;
+    populations[index] = population;
+    count++;
+    if (state == State.RECORDING) {
+      if (++position < period) {
+        generations[position].clear();
+        return;
+      }
+      // the recording is only replayed if the grid came back to the state it started in
+      if (matches(0, period) && isRecordedState(alive, owners, population)) {
+        state = State.REPLAYING;
+        position = 0;
+      } else {
+        reset();
+      }
+      return;
+    }
+    for (int p = 1; p <= MAX_PERIOD; p++) {
+      if (isPeriodic(p)) {
+        state = State.RECORDING;
+        period = p;
+        position = 0;
+        generations[0].clear();
+        recordState(alive, owners, population);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Forgets the history and stops replaying, because the grid was changed
+   * by something else than the rule.
+   */
+  void reset() {
+    state = State.DETECTING;
+    count = 0;
+    period = 0;
+    position = 0;
+  }
+
+  private void recordState(long[] alive, ChunkedIntArray owners, int population) {
+    if (recordedAlive.length != alive.length) {
+      recordedAlive = new long[alive.length];
+    }
+    System.arraycopy(alive, 0, recordedAlive, 0, alive.length);
+    if (recordedSlots.length < population) {
+      recordedSlots = new int[population];
+    }
+    int cell = 0;
+    for (int index = Bits.nextSetBit(alive, 0); index >= 0; index = Bits.nextSetBit(alive, index + 1)) {
+      recordedSlots[cell++] = owners.get(index);
+    }
+  }
+
+  /**
+   * Returns true if the grid has the same alive cells with the same owners
+   * as at the start of the recording.
+   */
+  private boolean isRecordedState(long[] alive, ChunkedIntArray owners, int population) {
+    if (!Arrays.equals(alive, recordedAlive)) {
+      return false;
+    }
+    int cell = 0;
+    for (int index = Bits.nextSetBit(alive, 0); index >= 0; index = Bits.nextSetBit(alive, index + 1)) {
+      if (owners.get(index) != recordedSlots[cell++]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the last period generations equal the period generations before them.
+   */
+  private boolean isPeriodic(int period) {
+    if (count < period * 2) {
+      return false;
+    }
+    for (int i = 0; i < period; i++) {
+      if (!matches(i, i + period)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if generations which are a and b generations older than the latest one are equal.
+   */
+  private boolean matches(int a, int b) {
+    int first = Math.floorMod(count - 1 - a, HISTORY);
+    int second = Math.floorMod(count - 1 - b, HISTORY);
+    return checksums[first] == checksums[second] && populations[first] == populations[second];
+  }
+
+}
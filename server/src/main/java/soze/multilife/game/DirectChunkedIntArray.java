@@ -0,0 +1,134 @@
+package soze.multilife.game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A {@link ChunkedIntArray} whose chunks are direct buffers outside of the Java heap,
+ * so big boards do not add to garbage collection pauses. Allocating a direct buffer
+ * is slow, so released chunks are zeroed and kept for reuse instead of being freed.
+ */
+final class DirectChunkedIntArray implements ChunkedIntArray {
+
+  private final int chunkBits;
+  private final int chunkMask;
+  private final IntBuffer[] chunks;
+  /**
+   * Number of non-zero values in every chunk.
+   */
+  private final int[] nonZeroCounts;
+  private final ArrayDeque<IntBuffer> releasedChunks = new ArrayDeque<>();
+  private final int[] zeros;
+
+  /**
+   * @param size      number of elements
+   * @param chunkBits log2 of the number of elements in a chunk
+   */
+  DirectChunkedIntArray(int size, int chunkBits) {
+    this.chunkBits = chunkBits;
+    this.chunkMask = (1 << chunkBits) - 1;
+    int chunkCount = (int) (((long) size + chunkMask) >>> chunkBits);
+    this.chunks = new IntBuffer[chunkCount];
+    this.nonZeroCounts = new int[chunkCount];
+    this.zeros = new int[chunkMask + 1];
+  }
+
+  /**
+   * Returns the number of bytes this array takes at most.
+   */
+  static long getMaxBytes(int size, int chunkBits) {
+    int chunkMask = (1 << chunkBits) - 1;
+    long chunkCount = ((long) size + chunkMask) >>> chunkBits;
+    return chunkCount * (chunkMask + 1) * Integer.BYTES;
+  }
+
+  public int get(int index) {
+    IntBuffer chunk = chunks[index >>> chunkBits];
+    return chunk == null ? 0 : chunk.get(index & chunkMask);
+  }
+
+  public void set(int index, int value) {
+    int chunkIndex = index >>> chunkBits;
+    IntBuffer chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      if (value == 0) {
+        return;
+      }
+      chunk = allocateChunk();
+      chunks[chunkIndex] = chunk;
+    }
+    int previous = chunk.get(index & chunkMask);
+    if (previous == 0 && value != 0) {
+      nonZeroCounts[chunkIndex]++;
+    } else if (previous != 0 && value == 0 && --nonZeroCounts[chunkIndex] == 0) {
+      chunk.put(index & chunkMask, 0);
+      releaseChunk(chunkIndex);
+      return;
+    }
+    chunk.put(index & chunkMask, value);
+  }
+
+  public void clearChunk(int chunkIndex) {
+    IntBuffer chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      return;
+    }
+    if (nonZeroCounts[chunkIndex] != 0) {
+      chunk.clear();
+      chunk.put(zeros);
+      chunk.clear();
+    }
+    releaseChunk(chunkIndex);
+  }
+
+  public boolean isChunkEmpty(int chunkIndex) {
+    return chunks[chunkIndex] == null;
+  }
+
+  public int getChunkCount() {
+    return chunks.length;
+  }
+
+  public int getAllocatedChunkCount() {
+    int count = 0;
+    for (IntBuffer chunk : chunks) {
+      if (chunk != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Drops chunks in use and chunks kept for reuse. Memory of direct buffers
+   * is freed once they are garbage collected.
+   */
+  public void free() {
+    Arrays.fill(chunks, null);
+    Arrays.fill(nonZeroCounts, 0);
+    releasedChunks.clear();
+  }
+
+  private IntBuffer allocateChunk() {
+    IntBuffer chunk = releasedChunks.poll();
+    if (chunk != null) {
+      return chunk;
+    }
+    return ByteBuffer.allocateDirect(zeros.length * Integer.BYTES)
+      .order(ByteOrder.nativeOrder())
+      .asIntBuffer();
+  }
+
+  /**
+   * Keeps a chunk, which contains only zeros, for reuse.
+   */
+  private void releaseChunk(int chunkIndex) {
+    releasedChunks.push(chunks[chunkIndex]);
+    chunks[chunkIndex] = null;
+    nonZeroCounts[chunkIndex] = 0;
+  }
+
+}
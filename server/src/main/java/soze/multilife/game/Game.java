@@ -3,6 +3,7 @@ package soze.multilife.game;
 import soze.multilife.game.exceptions.PlayerAlreadyInGameException;
 import soze.multilife.game.exceptions.PlayerNotInGameException;
 import soze.multilife.messages.incoming.IncomingMessage;
+import soze.multilife.messages.outgoing.GridSnapshot;
 import soze.multilife.messages.outgoing.OutgoingMessage;
 
 import java.awt.*;
@@ -44,6 +45,12 @@ public interface Game {
    */
   void end();
 
+  /**
+   * Releases memory of the game once it was removed from its container.
+   * The game cannot be run afterwards.
+   */
+  void release();
+
   int getMaxPlayers();
 
   Map<Integer, Integer> getPlayerPoints();
@@ -59,6 +66,11 @@ public interface Game {
 
   int getHeight();
 
+  /**
+   * Returns the game of life rule of this game in the B/S notation.
+   */
+  String getRuleString();
+
   boolean isFull();
 
   /**
@@ -77,6 +89,36 @@ public interface Game {
 
   Map<Point, Cell> getAllCells();
 
+  /**
+   * Returns a checksum of alive cells and their owners. Equal simulations
+   * have equal checksums, clients compute the same value.
+   */
+  int getChecksum();
+
+  /**
+   * Returns true if cells of this game's rule pass through dying states before they are dead.
+   * Clients do not simulate dying states, so their checksums do not match such games.
+   */
+  boolean hasDyingCells();
+
+  /**
+   * Returns number of cells which are checked in the next iteration.
+   * Cells whose neighbourhood did not change are not checked.
+   */
+  int getActiveCellCount();
+
+  /**
+   * Returns a run-length encoded snapshot of alive cells of the whole game.
+   */
+  GridSnapshot getSnapshot();
+
+  /**
+   * Returns a run-length encoded snapshot of alive cells in chunks from fromChunk (inclusive)
+   * to toChunk (exclusive). Chunks are ranges of consecutive cell indices, the range
+   * is clamped to the chunks of this game.
+   */
+  GridSnapshot getSnapshot(int fromChunk, int toChunk);
+
   /**
    * Sends the given message to all players connected to the game.
    */
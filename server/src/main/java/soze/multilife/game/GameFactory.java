@@ -1,8 +1,25 @@
 package soze.multilife.game;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soze.multilife.configuration.interfaces.GameConfiguration;
+import soze.multilife.configuration.interfaces.GameRunnerConfiguration;
+import soze.multilife.game.exceptions.CorruptGameFileException;
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
+import soze.multilife.game.rule.Rule;
+import soze.multilife.game.rule.RuleFactory;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -10,24 +27,280 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class GameFactory {
 
+  private static final Logger LOG = LoggerFactory.getLogger(GameFactory.class);
+
+  private static final String GAME_FILE_PREFIX = "game-";
+  private static final String GAME_FILE_SUFFIX = ".mlg";
+
+  private static final String DEFAULT_RULE = "BASIC";
+  private static final GridEngine DEFAULT_ENGINE = GridEngine.SCALAR;
+
   private final GameConfiguration config;
   private final AtomicInteger id = new AtomicInteger(1);
 
+  /**
+   * Rules new games are created with, each with a weight
+   * determining how often it is chosen.
+   */
+  private final List<Rule> rules = new ArrayList<>();
+  private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+  /**
+   * Engine used by games which do not specify one.
+   */
+  private final GridEngine engine;
+
+  /**
+   * Number of cells from which games are simulated by the parallel engine, 0 or less if never.
+   */
+  private final int parallelGridThreshold;
+
+  /**
+   * Budget shared by grids which keep owners of cells off-heap, null if they are kept on the heap.
+   */
+  private final OffHeapBudget offHeapBudget;
+
+  /**
+   * Directory games are saved to, null if games are not saved.
+   */
+  private final Path gameStateDirectory;
+
+  /**
+   * Pattern all new games start with, null if they start with random cells.
+   */
+  private final InitialPattern initialPattern;
+
+  /**
+   * Pool grids of the parallel engine are stepped on, null for the common pool.
+   */
+  private final ForkJoinPool tickPool;
+
   public GameFactory(GameConfiguration config) {
+    this(config, 0, null, null, null);
+  }
+
+  public GameFactory(GameConfiguration config, GameRunnerConfiguration runnerConfig) {
+    this(config, runnerConfig, null);
+  }
+
+  /**
+   * @param tickPool pool games are run on, parallel grids are stepped on it too, null for the common pool
+   */
+  public GameFactory(GameConfiguration config, GameRunnerConfiguration runnerConfig, ForkJoinPool tickPool) {
+    this(config, runnerConfig.getParallelGridThreshold(),
+      runnerConfig.getOffHeapBudget() > 0 ? new OffHeapBudget(runnerConfig.getOffHeapBudget()) : null,
+      parseDirectory(runnerConfig.getGameStateDirectory()), tickPool);
+  }
+
+  private GameFactory(GameConfiguration config, int parallelGridThreshold, OffHeapBudget offHeapBudget, Path gameStateDirectory,
+                      ForkJoinPool tickPool) {
     this.config = Objects.requireNonNull(config);
+    parseRules(config.getRules());
+    this.engine = parseEngine(config.getGridEngine());
+    this.parallelGridThreshold = parallelGridThreshold;
+    this.offHeapBudget = offHeapBudget;
+    this.gameStateDirectory = gameStateDirectory;
+    this.tickPool = tickPool;
+    this.initialPattern = loadPattern(config.getInitialPattern());
+  }
+
+  /**
+   * @throws IllegalArgumentException if the pattern cannot be loaded
+   */
+  private static InitialPattern loadPattern(String path) {
+    if (path == null || path.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return InitialPattern.load(Paths.get(path.trim()));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not load initial pattern [" + path + "].", e);
+    }
+  }
+
+  private static Path parseDirectory(String directory) {
+    if (directory == null || directory.trim().isEmpty()) {
+      return null;
+    }
+    return Paths.get(directory.trim());
   }
 
+  private GridEngine parseEngine(String engine) {
+    if (engine == null || engine.trim().isEmpty()) {
+      return DEFAULT_ENGINE;
+    }
+    return GridEngine.valueOf(engine.trim().toUpperCase());
+  }
+
+  /**
+   * Parses a comma separated list of rules with optional weights (eg. "BASIC:3, B36/S23").
+   *
+   * @throws IllegalArgumentException if any of the rules or weights is invalid
+   */
+  private void parseRules(String rulesConfiguration) {
+    if (rulesConfiguration == null || rulesConfiguration.trim().isEmpty()) {
+      rulesConfiguration = DEFAULT_RULE;
+    }
+    int totalWeight = 0;
+    for (String entry : rulesConfiguration.split(",")) {
+      String[] tokens = entry.split(":");
+      if (tokens.length > 2) {
+        throw new IllegalArgumentException("Invalid rule entry [" + entry + "], should be in rule:weight format.");
+      }
+      int weight = tokens.length == 2 ? Integer.parseInt(tokens[1].trim()) : 1;
+      if (weight <= 0) {
+        throw new IllegalArgumentException("Weight of a rule has to be positive [" + entry + "].");
+      }
+      totalWeight += weight;
+      rules.add(RuleFactory.getRule(tokens[0]));
+      cumulativeWeights.add(totalWeight);
+    }
+  }
+
+  /**
+   * Creates a game with a rule chosen randomly from configured rules,
+   * according to their weights.
+   */
   public Game createGame() {
+    return createGame(chooseRule());
+  }
+
+  /**
+   * Creates a game with a given rule, simulated by the configured engine.
+   */
+  public Game createGame(Rule rule) {
+    return createGame(rule, chooseEngine(config.getGridWidth(), config.getGridHeight()));
+  }
+
+  /**
+   * Creates a game with a given rule, simulated by a given engine.
+   *
+   * @throws OffHeapBudgetExceededException if owners of cells are kept off-heap and the budget is exhausted
+   */
+  public Game createGame(Rule rule, GridEngine engine) {
+    int width = config.getGridWidth();
+    int height = config.getGridHeight();
     BaseGame baseGame = new BaseGame(
       id.getAndIncrement(),
-      config.getInitialDensity(),
-      config.getGridWidth(),
-      config.getGridHeight(),
+      initialPattern != null ? initialPattern : InitialPattern.random(width, height, config.getInitialDensity()),
+      width,
+      height,
       config.getMaxPlayers(),
-      config.getGameDuration()
+      config.getGameDuration(),
+      rule,
+      engine,
+      offHeapBudget,
+      tickPool
     );
+    if (gameStateDirectory != null) {
+      saveGame(baseGame, rule);
+    }
 
     return baseGame;
   }
 
+  /**
+   * Starts saving a game to a file in the game state directory. If the file cannot
+   * be created, the game is not saved.
+   */
+  private void saveGame(BaseGame game, Rule rule) {
+    Path path = gameStateDirectory.resolve(GAME_FILE_PREFIX + game.getId() + GAME_FILE_SUFFIX);
+    try {
+      Files.createDirectories(gameStateDirectory);
+      game.saveTo(GameFile.create(
+        path, game.getId(), game.getWidth(), game.getHeight(), game.getMaxPlayers(),
+        config.getGameDuration(), rule.getRuleString(), rule.getStates() > 2
+      ));
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Could not create file [{}], game [{}] will not be saved.", path, game.getId(), e);
+    }
+  }
+
+  /**
+   * Restores games saved in the game state directory, which did not end before the server stopped.
+   * Files which are corrupted are renamed, so they are not restored again, files which could not
+   * be restored for other reasons are kept for the next start. Ids of new games continue after restored games.
+   */
+  public List<Game> restoreGames() {
+    List<Game> games = new ArrayList<>();
+    if (gameStateDirectory == null || !Files.isDirectory(gameStateDirectory)) {
+      return games;
+    }
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(gameStateDirectory, GAME_FILE_PREFIX + "*" + GAME_FILE_SUFFIX)) {
+      for (Path path : paths) {
+        restoreGame(path).ifPresent(games::add);
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not list saved games in [{}].", gameStateDirectory, e);
+    }
+    for (Game game : games) {
+      id.accumulateAndGet(game.getId() + 1, Math::max);
+    }
+    return games;
+  }
+
+  private Optional<Game> restoreGame(Path path) {
+    long start = System.nanoTime();
+    GameFile file = null;
+    try {
+      file = GameFile.open(path);
+      if (file.getTimePassed() >= file.getDuration()) {
+        file.delete();
+        return Optional.empty();
+      }
+      GridEngine gameEngine = chooseEngine(file.getWidth(), file.getHeight());
+      BaseGame game = BaseGame.restore(file, gameEngine, offHeapBudget, tickPool);
+      LOG.info("Restored game [{}] from [{}] in [{}] ms.", game.getId(), path, (System.nanoTime() - start) / 1e6);
+      return Optional.of(game);
+    } catch (CorruptGameFileException e) {
+      closeQuietly(file, path);
+      try {
+        Path corruptPath = GameFile.markCorrupt(path);
+        LOG.warn("Could not restore a game from [{}], moved it to [{}].", path, corruptPath, e);
+      } catch (IOException moveException) {
+        LOG.warn("Could not restore a game from [{}] and could not move it.", path, moveException);
+      }
+      return Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      // the file may be fine, eg. if there was not enough off-heap memory left, so it is kept
+      closeQuietly(file, path);
+      LOG.warn("Could not restore a game from [{}], it will be restored on the next start.", path, e);
+      return Optional.empty();
+    }
+  }
+
+  private static void closeQuietly(GameFile file, Path path) {
+    if (file == null) {
+      return;
+    }
+    try {
+      file.close();
+    } catch (IOException e) {
+      LOG.warn("Could not close [{}].", path, e);
+    }
+  }
+
+  /**
+   * Boards big enough are stepped in parallel, unless the configured engine is
+   * {@link GridEngine#HASHLIFE}, which does not benefit from it.
+   */
+  private GridEngine chooseEngine(int width, int height) {
+    if (parallelGridThreshold > 0 && engine != GridEngine.HASHLIFE
+      && (long) width * height >= parallelGridThreshold) {
+      return GridEngine.PARALLEL;
+    }
+    return engine;
+  }
+
+  private Rule chooseRule() {
+    int totalWeight = cumulativeWeights.get(cumulativeWeights.size() - 1);
+    int value = ThreadLocalRandom.current().nextInt(totalWeight);
+    for (int i = 0; i < rules.size(); i++) {
+      if (value < cumulativeWeights.get(i)) {
+        return rules.get(i);
+      }
+    }
+    throw new IllegalStateException("Could not choose a rule.");
+  }
+
 }
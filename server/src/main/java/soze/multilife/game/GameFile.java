@@ -0,0 +1,309 @@
+package soze.multilife.game;
+
+import soze.multilife.game.exceptions.CorruptGameFileException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State of a game kept in a memory-mapped file, so that games survive a restart of the server.
+ * The file is updated in place after every iteration: only chunks of the grid which changed
+ * are written, followed by the header with iterations, time and points of players.
+ * <p>
+ * The file consists of a header, points of players, a bitset of alive cells, owners of all
+ * cells and, for rules with dying cells, dying states of all cells. The checksum of the grid
+ * is written last, so a file torn by a crash in the middle of a write is detected when the game
+ * is restored.
+ */
+final class GameFile {
+
+  private static final int MAGIC = 0x4D4C4946;
+  private static final int VERSION = 1;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int ID_OFFSET = 8;
+  private static final int WIDTH_OFFSET = 12;
+  private static final int HEIGHT_OFFSET = 16;
+  private static final int MAX_PLAYERS_OFFSET = 20;
+  private static final int DURATION_OFFSET = 24;
+  private static final int TIME_PASSED_OFFSET = 32;
+  private static final int ITERATIONS_OFFSET = 40;
+  private static final int CHECKSUM_OFFSET = 44;
+  private static final int DECAY_OFFSET = 48;
+  private static final int POINTS_COUNT_OFFSET = 52;
+  private static final int RULE_LENGTH_OFFSET = 56;
+  private static final int RULE_OFFSET = 60;
+  private static final int HEADER_SIZE = 128;
+  private static final int MAX_RULE_LENGTH = (HEADER_SIZE - RULE_OFFSET) / Character.BYTES;
+
+  /**
+   * Suffix added to names of files which cannot be restored.
+   */
+  static final String CORRUPT_SUFFIX = ".corrupt";
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+
+  private final int size;
+  private final int pointsCapacity;
+  private final int aliveOffset;
+  private final int ownersOffset;
+  private final int decayOffset;
+
+  private GameFile(Path path, FileChannel channel, MappedByteBuffer buffer) {
+    this.path = path;
+    this.channel = channel;
+    this.buffer = buffer;
+    this.size = getWidth() * getHeight();
+    this.pointsCapacity = getPointsCapacity(getMaxPlayers());
+    this.aliveOffset = HEADER_SIZE + pointsCapacity * 2 * Integer.BYTES;
+    this.ownersOffset = aliveOffset + Bits.wordCount(size) * Long.BYTES;
+    this.decayOffset = buffer.getInt(DECAY_OFFSET) != 0 ? ownersOffset + size * Integer.BYTES : -1;
+  }
+
+  /**
+   * Creates a file for a new game, replacing an existing file.
+   *
+   * @throws IllegalArgumentException if the game does not fit in a file
+   */
+  static GameFile create(Path path, int id, int width, int height, int maxPlayers,
+                         long duration, String rule, boolean hasDecay) throws IOException {
+    if (rule.length() > MAX_RULE_LENGTH) {
+      throw new IllegalArgumentException("Rule [" + rule + "] is too long to be saved.");
+    }
+    int size = width * height;
+    long fileSize = HEADER_SIZE + (long) getPointsCapacity(maxPlayers) * 2 * Integer.BYTES
+      + (long) Bits.wordCount(size) * Long.BYTES + (long) size * Integer.BYTES + (hasDecay ? size : 0);
+    if (fileSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Game of size " + width + "x" + height + " is too big to be saved.");
+    }
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+    buffer.putInt(VERSION_OFFSET, VERSION);
+    buffer.putInt(ID_OFFSET, id);
+    buffer.putInt(WIDTH_OFFSET, width);
+    buffer.putInt(HEIGHT_OFFSET, height);
+    buffer.putInt(MAX_PLAYERS_OFFSET, maxPlayers);
+    buffer.putLong(DURATION_OFFSET, duration);
+    buffer.putInt(DECAY_OFFSET, hasDecay ? 1 : 0);
+    buffer.putInt(RULE_LENGTH_OFFSET, rule.length());
+    for (int i = 0; i < rule.length(); i++) {
+      buffer.putChar(RULE_OFFSET + i * Character.BYTES, rule.charAt(i));
+    }
+    // the magic number is written last, a file without it is not complete
+    buffer.putInt(MAGIC_OFFSET, MAGIC);
+    return new GameFile(path, channel, buffer);
+  }
+
+  /**
+   * Opens a file of a game saved before.
+   *
+   * @throws CorruptGameFileException if the file is not a valid game file
+   * @throws IOException                if the file cannot be read
+   */
+  static GameFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+        throw new CorruptGameFileException("File [" + path + "] is not a game file.");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+      if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+        throw new CorruptGameFileException("File [" + path + "] is not a game file of version " + VERSION + ".");
+      }
+      GameFile file = new GameFile(path, channel, buffer);
+      long expectedSize = file.decayOffset >= 0 ? file.decayOffset + file.size : file.ownersOffset + (long) file.size * Integer.BYTES;
+      if (channel.size() != expectedSize) {
+        throw new CorruptGameFileException("File [" + path + "] has an invalid size.");
+      }
+      return file;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Points of the AI and of players who left are kept as well.
+   */
+  private static int getPointsCapacity(int maxPlayers) {
+    return maxPlayers * 2 + 2;
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  int getId() {
+    return buffer.getInt(ID_OFFSET);
+  }
+
+  int getWidth() {
+    return buffer.getInt(WIDTH_OFFSET);
+  }
+
+  int getHeight() {
+    return buffer.getInt(HEIGHT_OFFSET);
+  }
+
+  int getMaxPlayers() {
+    return buffer.getInt(MAX_PLAYERS_OFFSET);
+  }
+
+  long getDuration() {
+    return buffer.getLong(DURATION_OFFSET);
+  }
+
+  long getTimePassed() {
+    return buffer.getLong(TIME_PASSED_OFFSET);
+  }
+
+  int getIterations() {
+    return buffer.getInt(ITERATIONS_OFFSET);
+  }
+
+  String getRuleString() {
+    int length = buffer.getInt(RULE_LENGTH_OFFSET);
+    StringBuilder rule = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      rule.append(buffer.getChar(RULE_OFFSET + i * Character.BYTES));
+    }
+    return rule.toString();
+  }
+
+  Map<Integer, Integer> getPlayerPoints() {
+    Map<Integer, Integer> points = new HashMap<>();
+    int count = buffer.getInt(POINTS_COUNT_OFFSET);
+    for (int i = 0; i < count; i++) {
+      int offset = HEADER_SIZE + i * 2 * Integer.BYTES;
+      points.put(buffer.getInt(offset), buffer.getInt(offset + Integer.BYTES));
+    }
+    return points;
+  }
+
+  /**
+   * Writes chunks of the grid which changed since the last write.
+   */
+  void writeChangedChunks(Grid grid) {
+    long[] changedChunks = grid.getChangedChunks();
+    for (int chunk = Bits.nextSetBit(changedChunks, 0); chunk >= 0; chunk = Bits.nextSetBit(changedChunks, chunk + 1)) {
+      writeChunk(grid, chunk);
+    }
+    Bits.clearAll(changedChunks);
+  }
+
+  /**
+   * Writes all chunks of the grid.
+   */
+  void writeAllChunks(Grid grid) {
+    int chunkCount = grid.getChunkCount();
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      writeChunk(grid, chunk);
+    }
+    Bits.clearAll(grid.getChangedChunks());
+  }
+
+  private void writeChunk(Grid grid, int chunk) {
+    long[] alive = grid.getAliveCells();
+    int fromWord = chunk * Grid.CHUNK_WORDS;
+    int toWord = Math.min(fromWord + Grid.CHUNK_WORDS, alive.length);
+    for (int word = fromWord; word < toWord; word++) {
+      buffer.putLong(aliveOffset + word * Long.BYTES, alive[word]);
+    }
+    int from = chunk << Grid.CHUNK_BITS;
+    int to = Math.min(from + Grid.CHUNK_SIZE, size);
+    for (int index = from; index < to; index++) {
+      buffer.putInt(ownersOffset + index * Integer.BYTES, grid.getOwnerId(index));
+    }
+    if (decayOffset >= 0) {
+      for (int index = from; index < to; index++) {
+        buffer.put(decayOffset + index, grid.getDecay(index));
+      }
+    }
+  }
+
+  /**
+   * Writes the state of the game. The checksum of the grid is written last.
+   */
+  void writeState(int iterations, long timePassed, Map<Integer, Integer> playerPoints, int checksum) {
+    int count = 0;
+    for (Map.Entry<Integer, Integer> entry : playerPoints.entrySet()) {
+      if (count == pointsCapacity) {
+        break;
+      }
+      int offset = HEADER_SIZE + count * 2 * Integer.BYTES;
+      buffer.putInt(offset, entry.getKey());
+      buffer.putInt(offset + Integer.BYTES, entry.getValue());
+      count++;
+    }
+    buffer.putInt(POINTS_COUNT_OFFSET, count);
+    buffer.putInt(ITERATIONS_OFFSET, iterations);
+    buffer.putLong(TIME_PASSED_OFFSET, timePassed);
+    buffer.putInt(CHECKSUM_OFFSET, checksum);
+  }
+
+  /**
+   * Sets cells of an empty grid to the saved cells.
+   *
+   * @throws CorruptGameFileException if the restored cells do not match the saved checksum
+   */
+  void restore(Grid grid) throws IOException {
+    if (grid.getWidth() != getWidth() || grid.getHeight() != getHeight()) {
+      throw new IllegalArgumentException("Grid has a different size than the saved game.");
+    }
+    int width = getWidth();
+    for (int index = 0; index < size; index++) {
+      boolean isAlive = (buffer.getLong(aliveOffset + (index >>> 6) * Long.BYTES) & (1L << index)) != 0;
+      int ownerId = buffer.getInt(ownersOffset + index * Integer.BYTES);
+      byte decay = decayOffset >= 0 ? buffer.get(decayOffset + index) : 0;
+      if (isAlive || ownerId != 0 || decay != 0) {
+        grid.changeState(index % width, index / width, isAlive, ownerId);
+      }
+    }
+    grid.transferCells();
+    if (decayOffset >= 0) {
+      for (int index = 0; index < size; index++) {
+        grid.setDecay(index, buffer.get(decayOffset + index));
+      }
+    }
+    if (grid.getChecksum() != buffer.getInt(CHECKSUM_OFFSET)) {
+      throw new CorruptGameFileException("Cells saved in [" + path + "] do not match their checksum.");
+    }
+  }
+
+  /**
+   * Closes the file, it can be opened again.
+   */
+  void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Renames a closed file which cannot be restored, so that it is not restored again,
+   * but can still be inspected.
+   *
+   * @return path the file was renamed to
+   */
+  static Path markCorrupt(Path path) throws IOException {
+    return Files.move(path, path.resolveSibling(path.getFileName() + CORRUPT_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Closes and deletes the file, the game will not be restored.
+   */
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+
+}
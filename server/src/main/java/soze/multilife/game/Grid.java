@@ -1,70 +1,252 @@
 package soze.multilife.game;
 
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
 import soze.multilife.game.rule.Rule;
 
 import java.awt.*;
+import java.io.ByteArrayOutputStream;
 import java.util.*;
 import java.util.List;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 /**
  * A grid of cells. This class manages the cells, lets the simulation
  * set cell states.
+ * Cells are stored in primitive arrays, a cell at x, y is stored
+ * at index x + y * width. Indices outside of the grid wrap around.
+ * Owners of cells can be kept outside of the Java heap, see {@link OffHeapBudget}.
+ * <p>
+ * The grid is split into chunks of {@link #CHUNK_SIZE} consecutive cells.
+ * A chunk is awake if it contains active cells, asleep chunks are skipped
+ * entirely during an update. Owners of cells are only stored for chunks
+ * which contain owned cells, so that big boards with little
+ * live area take little memory.
  */
 public class Grid {
 
+  private static final int FREE_SLOT = Integer.MIN_VALUE;
+
+  static final int CHUNK_BITS = 10;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  /**
+   * Number of bitset words in a chunk.
+   */
+  static final int CHUNK_WORDS = CHUNK_SIZE >>> 6;
+
   /**
    * Game of life rule to use for this grid.
    */
   private final Rule rule;
+
+  private final int width;
+  private final int height;
+  private final int size;
+
+  /**
+   * Alive state of all cells, one bit per cell.
+   */
+  private final long[] alive;
+  /**
+   * Number of alive cells in every chunk, so that alive cells
+   * can be found without visiting empty chunks.
+   */
+  private final int[] aliveCounts;
+  /**
+   * Number of all alive cells.
+   */
+  private int population;
+  /**
+   * Xor of {@link #cellHash(int, int)} of all alive cells, updated as cells change.
+   */
+  private int checksum;
+  /**
+   * Owner slots of all cells.
+   */
+  private final ChunkedIntArray owners;
   /**
-   * This map contains all cells.
+   * Owner ids are stored in cells as compact slots, so that owners can be counted
+   * in a small array. This maps slots to owner ids, slot 0 is always owner 0.
+   * A slot is freed when its owner is killed, free slots hold {@link #FREE_SLOT}.
    */
-  private final Map<Point, Cell> cells = new HashMap<>();
+  private int[] slotOwners = new int[]{0};
   /**
-   * This map contains current active cells. During a grid update,
-   * only cells contained within this collection are checked.
+   * Counts of owner slots among neighbours of a single cell, all zero between uses.
    */
-  private final Map<Point, Cell> activeCells = new HashMap<>();
+  private int[] slotCounts = new int[1];
   /**
-   * This map contains cells which will become active cells
-   * in the next iteration.
+   * Current active cells. During a grid update,
+   * only cells contained within this set are checked.
    */
-  private final Map<Point, Cell> nextCells = new HashMap<>();
+  private long[] active;
+  /**
+   * Chunks which contain active cells.
+   */
+  private long[] awake;
+  /**
+   * Active cells and awake chunks of the next iteration. Built during a transfer
+   * and swapped with the current ones, the previous ones are cleared for reuse.
+   */
+  private long[] nextActive;
+  private long[] nextAwake;
+  /**
+   * Cells which will change their state in this iteration.
+   * They and their neighbours become active cells in the next iteration.
+   */
+  private final long[] pending;
+  /**
+   * State of pending cells.
+   */
+  private final long[] pendingAlive;
+  /**
+   * Owner slots of pending cells.
+   */
+  private final ChunkedIntArray pendingOwners;
+  /**
+   * Chunks which contain pending cells.
+   */
+  private final long[] pendingChunks;
+  /**
+   * Chunks in which cells changed since they were last saved, see {@link GameFile}.
+   */
+  private final long[] changedChunks;
+  /**
+   * Number of dying states remaining (unsigned) for every cell, only used by rules
+   * with more than two states (null otherwise). A cell with non-zero
+   * decay is dead, but it cannot come alive.
+   */
+  private final byte[] decay;
 
-  private final int width;
-  private final int height;
+  /**
+   * Index offsets of neighbours of a cell. Neighbours are always visited
+   * in this order (column by column), which matters when choosing
+   * the strongest owner.
+   */
+  private final int[] neighbourOffsets;
+
+  /**
+   * Scratch buffers used while updating a single cell, reused between cells
+   * so that an update does not allocate.
+   */
+  private final int[] aliveNeighbours = new int[8];
+  private final int[] neighbourSlots = new int[8];
+
+  /**
+   * Finds cells which change their state in every iteration.
+   */
+  private final Stepper stepper;
 
-  private Consumer<Integer> onCellDeath = (var) -> {
+  /**
+   * Replays generations of a grid which repeats itself. Null for rules with more than two states,
+   * whose dying cells are not recorded.
+   */
+  private final CycleDetector cycles;
+
+  /**
+   * Budget the memory of owners was reserved from, null if owners are kept on the heap.
+   */
+  private final OffHeapBudget budget;
+  private boolean released = false;
+
+  private IntConsumer onCellDeath = (var) -> {
   };
-  private Consumer<Integer> onCellBirth = (var) -> {
+  private IntConsumer onCellBirth = (var) -> {
   };
 
   Grid(int width, int height, Rule rule) {
+    this(width, height, rule, GridEngine.SCALAR);
+  }
+
+  Grid(int width, int height, Rule rule, GridEngine engine) {
+    this(width, height, rule, engine, null);
+  }
+
+  /**
+   * Creates a grid which keeps owners of cells in direct buffers, reserving the memory
+   * they can take from a given budget. If the budget is null, owners are kept on the heap.
+   *
+   * @throws OffHeapBudgetExceededException if there is not enough memory left in the budget
+   */
+  Grid(int width, int height, Rule rule, GridEngine engine, OffHeapBudget budget) {
+    this(width, height, rule, engine, budget, null);
+  }
+
+  /**
+   * @param pool pool the {@link GridEngine#PARALLEL} engine runs on, null for the common pool
+   */
+  Grid(int width, int height, Rule rule, GridEngine engine, OffHeapBudget budget, ForkJoinPool pool) {
     if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid height or width, cannot be below 1.");
     this.width = width;
     this.height = height;
+    this.size = width * height;
     this.rule = rule;
-    init();
+    int words = Bits.wordCount(size);
+    this.alive = new long[words];
+    this.budget = budget;
+    if (budget != null) {
+      budget.reserve(getOffHeapBytes(size));
+      this.owners = new DirectChunkedIntArray(size, CHUNK_BITS);
+      this.pendingOwners = new DirectChunkedIntArray(size, CHUNK_BITS);
+    } else {
+      this.owners = new HeapChunkedIntArray(size, CHUNK_BITS);
+      this.pendingOwners = new HeapChunkedIntArray(size, CHUNK_BITS);
+    }
+    this.active = new long[words];
+    this.aliveCounts = new int[owners.getChunkCount()];
+    int chunkWords = Bits.wordCount(owners.getChunkCount());
+    this.awake = new long[chunkWords];
+    this.nextActive = new long[words];
+    this.nextAwake = new long[chunkWords];
+    this.pending = new long[words];
+    this.pendingAlive = new long[words];
+    this.pendingChunks = new long[chunkWords];
+    this.changedChunks = new long[chunkWords];
+    this.decay = rule.getStates() > 2 ? new byte[size] : null;
+    this.neighbourOffsets = createNeighbourOffsets(width);
+    this.stepper = engine.createStepper(rule, width, height, pool);
+    this.cycles = decay == null ? new CycleDetector() : null;
+  }
+
+  /**
+   * Returns the number of bytes owners of a grid of a given size can take off-heap.
+   */
+  static long getOffHeapBytes(int size) {
+    return 2 * DirectChunkedIntArray.getMaxBytes(size, CHUNK_BITS);
   }
 
   /**
-   * Populates the grid of all cells.
+   * Drops owners of cells and returns memory reserved by this grid to its budget.
+   * The grid should not be used afterwards.
    */
-  private void init() {
-    for (int i = 0; i < width; i++) {
-      for (int j = 0; j < height; j++) {
-        cells.put(new Point(i, j), new Cell(i, j));
+  void release() {
+    if (released) {
+      return;
+    }
+    owners.free();
+    pendingOwners.free();
+    if (budget != null) {
+      budget.release(getOffHeapBytes(size));
+    }
+    released = true;
+  }
+
+  private static int[] createNeighbourOffsets(int width) {
+    int[] offsets = new int[8];
+    int n = 0;
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        if (i == 0 && j == 0) continue;
+        offsets[n++] = i + (j * width);
       }
     }
+    return offsets;
   }
 
-  void onCellDeath(Consumer<Integer> onCellDeath) {
+  void onCellDeath(IntConsumer onCellDeath) {
     this.onCellDeath = onCellDeath;
   }
 
-  void onCellBirth(Consumer<Integer> onCellBirth) {
+  void onCellBirth(IntConsumer onCellBirth) {
     this.onCellBirth = onCellBirth;
   }
 
@@ -76,11 +258,209 @@ public class Grid {
     return height;
   }
 
+  int getSize() {
+    return size;
+  }
+
+  Rule getRule() {
+    return rule;
+  }
+
+  /**
+   * Returns the bitset of alive cells. Used by steppers, should not be modified.
+   */
+  long[] getAliveCells() {
+    return alive;
+  }
+
+  /**
+   * Returns the bitset of active cells. Used by steppers, should not be modified.
+   */
+  long[] getActiveCells() {
+    return active;
+  }
+
+  /**
+   * Returns the bitset of awake chunks. Used by steppers, should not be modified.
+   */
+  long[] getAwakeChunks() {
+    return awake;
+  }
+
+  /**
+   * @return number of cells checked in the next iteration
+   */
+  int getActiveCellCount() {
+    int count = 0;
+    for (int chunk = Bits.nextSetBit(awake, 0); chunk >= 0; chunk = Bits.nextSetBit(awake, chunk + 1)) {
+      int end = Math.min((chunk + 1) * CHUNK_WORDS, active.length);
+      for (int word = chunk * CHUNK_WORDS; word < end; word++) {
+        count += Long.bitCount(active[word]);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns index of the first active cell at or after fromIndex,
+   * or -1 if there is no such cell. Skips asleep chunks.
+   */
+  int nextActiveCell(int fromIndex) {
+    int chunk = Bits.nextSetBit(awake, fromIndex >>> CHUNK_BITS);
+    while (chunk >= 0) {
+      int chunkStart = chunk << CHUNK_BITS;
+      int index = Bits.nextSetBit(active, Math.max(fromIndex, chunkStart), Math.min(chunkStart + CHUNK_SIZE, size));
+      if (index >= 0) {
+        return index;
+      }
+      chunk = Bits.nextSetBit(awake, chunk + 1);
+    }
+    return -1;
+  }
+
+  /**
+   * Returns index offsets of neighbours of a cell, should not be modified.
+   */
+  int[] getNeighbourOffsets() {
+    return neighbourOffsets;
+  }
+
   /**
    * @return all cells in this grid
    */
   Map<Point, Cell> getAllCells() {
-    return new HashMap<>(cells);
+    Map<Point, Cell> cells = new HashMap<>(size * 2);
+    for (int index = 0; index < size; index++) {
+      Cell cell = createCell(index);
+      cells.put(new Point(cell.getX(), cell.getY()), cell);
+    }
+    return cells;
+  }
+
+  /**
+   * @return cell at location x, y
+   */
+  Cell getCell(int x, int y) {
+    return createCell(getIndex(x, y));
+  }
+
+  /**
+   * @return number of alive cells
+   */
+  int getPopulation() {
+    return population;
+  }
+
+  /**
+   * Returns a checksum of all alive cells and their owners. It is a xor of hashes of
+   * all alive cells (Zobrist hashing), so it only costs a little for every changed cell.
+   * Clients compute it the same way, to detect that their simulation diverged.
+   */
+  int getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * Hash of an alive cell at a given index, owned by a given owner.
+   * The last steps are the 32 bit finalizer of MurmurHash3.
+   */
+  static int cellHash(int index, int ownerId) {
+    int hash = index * 0x9E3779B1 + ownerId;
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    hash *= 0xC2B2AE35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  /**
+   * Encodes alive cells from fromIndex (inclusive) to toIndex (exclusive) as runs of
+   * alive cells with the same owner. Every run is written as three unsigned varints:
+   * number of dead cells before the run, length of the run and the owner of its cells.
+   * Dead cells after the last run are not written. Chunks without alive cells are skipped.
+   */
+  byte[] encodeSnapshot(int fromIndex, int toIndex) {
+    if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+      throw new IllegalArgumentException("Invalid snapshot range " + fromIndex + " - " + toIndex);
+    }
+    ByteArrayOutputStream runs = new ByteArrayOutputStream();
+    int position = fromIndex;
+    int index = nextAliveCell(fromIndex, toIndex);
+    while (index >= 0) {
+      int slot = owners.get(index);
+      int end = index + 1;
+      while (end < toIndex && Bits.get(alive, end) && owners.get(end) == slot) {
+        end++;
+      }
+      writeVarint(runs, index - position);
+      writeVarint(runs, end - index);
+      writeVarint(runs, slotOwners[slot]);
+      position = end;
+      index = nextAliveCell(end, toIndex);
+    }
+    return runs.toByteArray();
+  }
+
+  /**
+   * Returns index of the first alive cell at or after fromIndex and before toIndex,
+   * or -1 if there is no such cell. Skips chunks without alive cells.
+   */
+  private int nextAliveCell(int fromIndex, int toIndex) {
+    for (int chunk = fromIndex >>> CHUNK_BITS; fromIndex < toIndex; chunk++) {
+      int chunkEnd = Math.min((chunk + 1) << CHUNK_BITS, toIndex);
+      if (aliveCounts[chunk] != 0) {
+        int index = Bits.nextSetBit(alive, fromIndex, chunkEnd);
+        if (index >= 0) {
+          return index;
+        }
+      }
+      fromIndex = chunkEnd;
+    }
+    return -1;
+  }
+
+  /**
+   * Writes a value as an unsigned varint, 7 bits per byte, lowest bits first.
+   */
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Returns the bitset of chunks in which cells changed since the bitset was last cleared.
+   * Cleared by whoever saves the grid.
+   */
+  long[] getChangedChunks() {
+    return changedChunks;
+  }
+
+  int getOwnerId(int index) {
+    return slotOwners[owners.get(index)];
+  }
+
+  /**
+   * Returns the number of iterations a cell at a given index is still dying for, 0 if it is not dying.
+   */
+  byte getDecay(int index) {
+    return decay == null ? 0 : decay[index];
+  }
+
+  void setDecay(int index, byte value) {
+    if (decay != null) {
+      decay[index] = value;
+    }
+  }
+
+  /**
+   * @return number of chunks of the grid
+   */
+  int getChunkCount() {
+    return aliveCounts.length;
   }
 
   /**
@@ -92,20 +472,57 @@ public class Grid {
    * @param ownerId owner of the cell
    */
   void changeState(int x, int y, boolean state, int ownerId) {
-    Point p = getPoint(x, y);
-    changeState(p, state, ownerId);
+    changeState(getIndex(x, y), state, ownerId);
   }
 
-
   /**
    * Adds all given cells to the next cells.
    */
   void click(Collection<Cell> cells) {
     for (Cell cell : cells) {
-      nextCells.put(new Point(cell.getX(), cell.getY()), cell);
+      changeState(cell.getX(), cell.getY(), cell.isAlive(), cell.getOwnerId());
     }
   }
 
+  /**
+   * Makes a cell at a given index alive in the next iteration, owned by a given player.
+   */
+  void click(int index, int ownerId) {
+    changeState(index, true, ownerId);
+  }
+
+  /**
+   * Makes alive all cells of a pattern in the next iteration, owned by a given player.
+   * The pattern is placed in the centre of the grid. Pending cells are set a whole bitset
+   * word at a time, only owners are set one cell at a time.
+   */
+  void seed(InitialPattern pattern, int ownerId) {
+    long[] cells = pattern.placeIn(width, height);
+    int slot = slotOf(ownerId);
+    for (int word = 0; word < cells.length; word++) {
+      long bits = cells[word];
+      if (bits == 0) {
+        continue;
+      }
+      pending[word] |= bits;
+      pendingAlive[word] |= bits;
+      Bits.set(pendingChunks, (word << 6) >>> CHUNK_BITS);
+      while (bits != 0) {
+        pendingOwners.set((word << 6) + Long.numberOfTrailingZeros(bits), slot);
+        bits &= bits - 1;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of a cell wrapped around the grid, or -1 if the cell
+   * cannot be clicked because it is alive or dying.
+   */
+  int findClickableIndex(int index) {
+    index = wrapIndex(index);
+    return Bits.get(alive, index) || isDying(index) ? -1 : index;
+  }
+
   /**
    * Finds cells with given indices that are clickable by this player.
    *
@@ -116,10 +533,9 @@ public class Grid {
   List<Cell> findClickableCells(int[] indices, int ownerId) {
     List<Cell> clickableCells = new ArrayList<>();
     for (int i : indices) {
-      Point p = getPoint(i);
-      Cell cell = cells.get(p);
-      if (!cell.isAlive()) {
-        cell = new Cell(p.x, p.y);
+      int index = wrapIndex(i);
+      if (!Bits.get(alive, index) && !isDying(index)) {
+        Cell cell = new Cell(index % width, index / width);
         cell.setIsAlive(true);
         cell.setOwnerId(ownerId);
         clickableCells.add(cell);
@@ -129,166 +545,401 @@ public class Grid {
   }
 
   /**
-   * Changes the state of a cell at a given point.
+   * Changes the state of a cell at a given index. The change becomes
+   * visible after the next transfer.
    *
-   * @param p       point containing coordinates
+   * @param index   index of the cell
    * @param state   alive/dead
    * @param ownerId id of the owner
    */
-  private void changeState(Point p, boolean state, int ownerId) {
-    Cell cell = nextCells.get(p);
-    if (cell == null) {
-      cell = new Cell(p.x, p.y);
-      nextCells.put(p, cell);
-    }
-    cell.setIsAlive(state);
-    cell.setOwnerId(ownerId);
+  private void changeState(int index, boolean state, int ownerId) {
+    changeSlot(index, state, slotOf(ownerId));
+  }
+
+  private void changeSlot(int index, boolean state, int slot) {
+    Bits.set(pending, index);
+    Bits.set(pendingAlive, index, state);
+    Bits.set(pendingChunks, index >>> CHUNK_BITS);
+    pendingOwners.set(index, slot);
   }
 
   /**
-   * Adds this cell to the map of active cells.
-   * This method also adds neighbours of this cell to active cells.
-   * If cells already exist, cells are not replaced.
+   * Returns the slot of a given owner, assigning a free slot if the owner has none.
+   * There are only as many slots as owners in the grid, so a linear search is enough.
    */
-  private void addToActive(Cell cell) {
-    int x = cell.getX();
-    int y = cell.getY();
-    for (int i = -1; i < 2; i++) {
-      for (int j = -1; j < 2; j++) {
-        Point p = getPoint(i + x, j + y);
-        activeCells.putIfAbsent(p, getCell(p.x, p.y));
+  private int slotOf(int ownerId) {
+    int freeSlot = -1;
+    for (int slot = 0; slot < slotOwners.length; slot++) {
+      if (slotOwners[slot] == ownerId) {
+        return slot;
       }
+      if (freeSlot == -1 && slotOwners[slot] == FREE_SLOT) {
+        freeSlot = slot;
+      }
+    }
+    if (freeSlot == -1) {
+      freeSlot = slotOwners.length;
+      slotOwners = Arrays.copyOf(slotOwners, freeSlot + 1);
+      slotCounts = new int[slotOwners.length];
     }
+    slotOwners[freeSlot] = ownerId;
+    return freeSlot;
   }
 
   /**
-   * Returns a cell at this position. If x or y is out of bounds,
-   * this method will wrap around the grid.
-   *
-   * @return cell at given coordinates (from all cells)
+   * Adds neighbours of given cells of a bitset word to the active cells of the next iteration,
+   * by shifting the whole word by every neighbour offset.
+   */
+  private void addNeighboursToNextActive(int word, long cells) {
+    int start = word << 6;
+    for (int offset : neighbourOffsets) {
+      activateWindow(wrapIndex(start + offset), cells);
+    }
+  }
+
+  /**
+   * Adds 64 cells starting at a given position to the active cells of the next iteration,
+   * wrapping around the end of the grid. Bit j of cells is the cell (position + j) % size.
    */
-  private Cell getCell(int x, int y) {
-    return cells.get(getPoint(x, y));
+  private void activateWindow(int position, long cells) {
+    int bit = 0;
+    while (bit < 64) {
+      int length = Math.min(64 - bit, size - position);
+      long bits = cells >>> bit;
+      if (length < 64) {
+        bits &= (1L << length) - 1;
+      }
+      if (bits != 0) {
+        int wordIndex = position >>> 6;
+        int shift = position & 63;
+        nextActive[wordIndex] |= bits << shift;
+        Bits.set(nextAwake, wordIndex / CHUNK_WORDS);
+        if (shift != 0 && (bits >>> (64 - shift)) != 0) {
+          nextActive[wordIndex + 1] |= bits >>> (64 - shift);
+          Bits.set(nextAwake, (wordIndex + 1) / CHUNK_WORDS);
+        }
+      }
+      bit += length;
+      position = 0;
+    }
   }
 
   /**
    * Updates the cells and transfers the cells from nextCells to active cells
-   * and updates the underlying map.
+   * and updates the underlying map. If the grid repeats itself, the generation
+   * is replayed instead. Any cells changed before the update end the replay.
    */
   void updateGrid() {
+    if (cycles == null) {
+      update();
+      transferCells();
+      return;
+    }
+    if (Bits.nextSetBit(pendingChunks, 0) >= 0) {
+      cycles.reset();
+    }
+    if (cycles.isReplaying()) {
+      replayGeneration();
+      return;
+    }
     update();
     transferCells();
+    cycles.generationComputed(checksum, population, alive, owners);
   }
 
   /**
-   * Goes through active cells and populates next iteration
-   * active cells.
+   * Applies the next recorded generation of a cycle, without running the rule.
    */
-  private void update() {
-    for (Cell cell : activeCells.values()) {
-      int x = cell.getX();
-      int y = cell.getY();
-      List<Cell> aliveNeighbours = getAliveNeighbourCells(x, y);
-      int state = rule.apply(aliveNeighbours.size(), cell.isAlive());
-      if (state != 0) {
-        int ownerId = cell.getOwnerId();
-        int strongestOwnerId = getStrongestOwnerId(aliveNeighbours);
-        // 0 -> 1 | point to strongest owner
-        // 1 -> 0 | point from cell owner
-        if (state == -1) {
-          onCellDeath.accept(strongestOwnerId);
-        }
-        if (state == 1) {
-          onCellBirth.accept(ownerId);
-        }
-        changeState(x, y, state > 0, strongestOwnerId == -1 ? ownerId : strongestOwnerId);
+  private void replayGeneration() {
+    CycleDetector.Generation generation = cycles.nextReplayedGeneration();
+    for (int i = 0; i < generation.getCallbackCount(); i++) {
+      if (generation.isBirth(i)) {
+        onCellBirth.accept(generation.getCallbackOwner(i));
+      } else {
+        onCellDeath.accept(generation.getCallbackOwner(i));
       }
     }
+    for (int i = 0; i < generation.getCellCount(); i++) {
+      changeSlot(generation.getIndex(i), generation.isAlive(i), generation.getSlot(i));
+    }
+    transferCells();
   }
 
   /**
-   * Returns all alive cells around a cell at location x, y.
+   * Returns period of the cycle which is being replayed, or 0 if the grid is not in a cycle.
    */
-  private List<Cell> getAliveNeighbourCells(int x, int y) {
-    List<Cell> aliveNeighbourCells = new ArrayList<>();
-    for (int i = -1; i < 2; i++) {
-      for (int j = -1; j < 2; j++) {
-        if (i == 0 && j == 0) continue;
-        Cell cell = getCell(x + i, y + j);
-        if (cell.isAlive()) aliveNeighbourCells.add(cell);
+  int getCyclePeriod() {
+    return cycles == null ? 0 : cycles.getPeriod();
+  }
+
+  /**
+   * Finds cells which change their state in the next iteration
+   * and populates next iteration active cells.
+   */
+  private void update() {
+    stepper.step(this);
+  }
+
+  /**
+   * Changes the state of an active cell according to the result of the rule.
+   * Assigns an owner to the cell and awards points. Neighbours of the cell
+   * have to be found with {@link #findAliveNeighbours(int)} before calling this method.
+   *
+   * @param index               index of the cell
+   * @param state               result of the rule, -1 if the cell dies, 1 if it comes alive
+   * @param aliveNeighbourCount number of alive neighbours of the cell
+   */
+  void changeCell(int index, int state, int aliveNeighbourCount) {
+    int ownerSlot = owners.get(index);
+    int strongestSlot = getStrongestSlot(aliveNeighbourCount);
+    // 0 -> 1 | point to strongest owner
+    // 1 -> 0 | point from cell owner
+    if (state == -1) {
+      int ownerId = strongestSlot == -1 ? -1 : slotOwners[strongestSlot];
+      onCellDeath.accept(ownerId);
+      if (cycles != null && cycles.isRecording()) {
+        cycles.recordDeath(ownerId);
+      }
+      if (decay != null) {
+        decay[index] = (byte) (rule.getStates() - 2);
       }
     }
-    return aliveNeighbourCells;
+    if (state == 1) {
+      onCellBirth.accept(slotOwners[ownerSlot]);
+      if (cycles != null && cycles.isRecording()) {
+        cycles.recordBirth(slotOwners[ownerSlot]);
+      }
+    }
+    changeSlot(index, state > 0, strongestSlot == -1 ? ownerSlot : strongestSlot);
+  }
+
+  boolean isDying(int index) {
+    return decay != null && decay[index] != 0;
   }
 
   /**
-   * Finds the most frequently (mode) occuring ownerId among given cells.
-   * If there are no cells, returns -1.
+   * Moves a dying cell to its next dying state (or makes it dead). The cell
+   * stays active so that it keeps decaying, and so that it can come alive
+   * once it is dead.
    */
-  private int getStrongestOwnerId(List<Cell> cells) {
-    if (cells.isEmpty()) {
-      return -1;
+  void decay(int index) {
+    decay[index]--;
+    changeSlot(index, false, owners.get(index));
+  }
+
+  /**
+   * Finds all alive cells around a cell at a given index and stores
+   * their indices in {@link #aliveNeighbours}.
+   *
+   * @return number of alive neighbours
+   */
+  int findAliveNeighbours(int index) {
+    int count = 0;
+    for (int offset : neighbourOffsets) {
+      int neighbour = wrapIndex(index + offset);
+      if (Bits.get(alive, neighbour)) aliveNeighbours[count++] = neighbour;
     }
-    List<Integer> ownerIds = cells.stream()
-      .map(Cell::getOwnerId)
-      .collect(Collectors.toList());
-    return mode(ownerIds);
+    return count;
   }
 
-  private int mode(List<Integer> list) {
-    int maxValue = 0, maxCount = 0;
+  /**
+   * Counts alive cells around a cell at a given index. Unlike
+   * {@link #findAliveNeighbours(int)}, does not modify the grid,
+   * so it can be called from many threads at once.
+   */
+  int countAliveNeighbours(int index) {
+    int count = 0;
+    for (int offset : neighbourOffsets) {
+      if (Bits.get(alive, wrapIndex(index + offset))) count++;
+    }
+    return count;
+  }
 
-    for (int i = 0; i < list.size(); ++i) {
-      int count = 0;
-      for (int j = 0; j < list.size(); ++j) {
-        if (list.get(j).equals(list.get(i))) ++count;
-      }
-      if (count > maxCount) {
-        maxCount = count;
-        maxValue = list.get(i);
+  /**
+   * Finds the most frequently (mode) occuring owner slot among the first count
+   * cells stored in {@link #aliveNeighbours}. If several slots occur equally often,
+   * the one which occurs first wins. If there are no cells, returns -1.
+   */
+  private int getStrongestSlot(int count) {
+    if (count == 0) {
+      return -1;
+    }
+    for (int i = 0; i < count; i++) {
+      int slot = owners.get(aliveNeighbours[i]);
+      neighbourSlots[i] = slot;
+      slotCounts[slot]++;
+    }
+    int strongestSlot = -1, maxCount = 0;
+    for (int i = 0; i < count; i++) {
+      int slotCount = slotCounts[neighbourSlots[i]];
+      if (slotCount > maxCount) {
+        maxCount = slotCount;
+        strongestSlot = neighbourSlots[i];
       }
     }
-
-    return maxValue;
+    for (int i = 0; i < count; i++) {
+      slotCounts[neighbourSlots[i]] = 0;
+    }
+    return strongestSlot;
   }
 
   /**
-   * Switches active cells and next iteration active cells.
-   * After the switch, next iteration cells are cleared.
+   * Applies pending cells, builds active cells of the next iteration from them
+   * and swaps them with current active cells. After the switch, pending cells are cleared.
+   * Only awake chunks and chunks with pending cells are visited.
    */
   void transferCells() {
-    activeCells.clear();
-    for (Cell nextCell : nextCells.values()) {
-      Cell cell = getCell(nextCell.getX(), nextCell.getY());
-      cell.setIsAlive(nextCell.isAlive());
-      cell.setOwnerId(nextCell.getOwnerId());
-      addToActive(cell);
+    CycleDetector.Generation recording = cycles != null && cycles.isRecording() ? cycles.getRecordedGeneration() : null;
+    for (int chunk = Bits.nextSetBit(pendingChunks, 0); chunk >= 0; chunk = Bits.nextSetBit(pendingChunks, chunk + 1)) {
+      int end = Math.min((chunk + 1) * CHUNK_WORDS, pending.length);
+      for (int word = chunk * CHUNK_WORDS; word < end; word++) {
+        if (pending[word] != 0) {
+          transferWord(word, recording);
+        }
+      }
+    }
+    for (int word = 0; word < pendingChunks.length; word++) {
+      changedChunks[word] |= pendingChunks[word];
+    }
+    Bits.clearAll(pendingChunks);
+
+    long[] previousActive = active;
+    long[] previousAwake = awake;
+    active = nextActive;
+    awake = nextAwake;
+    nextActive = previousActive;
+    nextAwake = previousAwake;
+
+    for (int word = 0; word < nextAwake.length; word++) {
+      long chunks = nextAwake[word];
+      // pending owners are only needed in awake chunks
+      long sleeping = chunks & ~awake[word];
+      while (sleeping != 0) {
+        pendingOwners.clearChunk((word << 6) + Long.numberOfTrailingZeros(sleeping));
+        sleeping &= sleeping - 1;
+      }
+      while (chunks != 0) {
+        int chunk = (word << 6) + Long.numberOfTrailingZeros(chunks);
+        chunks &= chunks - 1;
+        Bits.clearWords(nextActive, chunk * CHUNK_WORDS, (chunk + 1) * CHUNK_WORDS);
+      }
+      nextAwake[word] = 0;
     }
-    nextCells.clear();
+  }
+
+  /**
+   * Applies pending cells of a single bitset word and makes them active in the next iteration.
+   * Neighbours are only activated for cells which were born or died, a neighbourhood in which
+   * no cell flipped gives the same result as before. So cells which only decay or change
+   * their owner, and still lifes, drop out of the active cells.
+   * If a generation of a cycle is being recorded, pending cells are added to it.
+   */
+  private void transferWord(int word, CycleDetector.Generation recording) {
+    long pendingCells = pending[word];
+    long wasAlive = alive[word];
+    long flipped = pendingCells & (pendingAlive[word] ^ wasAlive);
+    activateWindow(word << 6, pendingCells);
+    if (flipped != 0) {
+      addNeighboursToNextActive(word, flipped);
+    }
+    alive[word] ^= flipped;
+    int births = Long.bitCount(flipped & alive[word]);
+    int deaths = Long.bitCount(flipped) - births;
+    aliveCounts[word / CHUNK_WORDS] += births - deaths;
+    population += births - deaths;
+    int start = word << 6;
+    while (flipped != 0) {
+      int index = start + Long.numberOfTrailingZeros(flipped);
+      flipped &= flipped - 1;
+      stepper.cellChanged(index, Bits.get(alive, index));
+    }
+    if (decay != null) {
+      long born = pendingCells & pendingAlive[word];
+      while (born != 0) {
+        decay[start + Long.numberOfTrailingZeros(born)] = 0;
+        born &= born - 1;
+      }
+    }
+    // pending cells which are or were alive change the checksum
+    long changedCells = pendingCells & (wasAlive | alive[word]);
+    while (pendingCells != 0) {
+      int bit = Long.numberOfTrailingZeros(pendingCells);
+      pendingCells &= pendingCells - 1;
+      int index = start + bit;
+      int slot = pendingOwners.get(index);
+      if (recording != null) {
+        recording.addCell(index, (pendingAlive[word] & (1L << bit)) != 0, slot);
+      }
+      if ((changedCells & (1L << bit)) != 0) {
+        if ((wasAlive & (1L << bit)) != 0) {
+          checksum ^= cellHash(index, slotOwners[owners.get(index)]);
+        }
+        if ((alive[word] & (1L << bit)) != 0) {
+          checksum ^= cellHash(index, slotOwners[slot]);
+        }
+      }
+      owners.set(index, slot);
+    }
+    pending[word] = 0;
   }
 
   /**
    * Kills all cells belonging to a given playerId.
    */
   void killAll(long playerId) {
-    for (Cell cell : cells.values()) {
-      if (cell.getOwnerId() == playerId) {
-        cell.setOwnerId(0);
-        cell.setAlive(false);
+    int playerSlot = -1;
+    for (int slot = 0; slot < slotOwners.length; slot++) {
+      if (slotOwners[slot] == playerId) {
+        playerSlot = slot;
+      }
+    }
+    if (playerSlot == -1) {
+      return;
+    }
+    if (cycles != null) {
+      cycles.reset();
+    }
+    for (int chunk = 0; chunk < owners.getChunkCount(); chunk++) {
+      if (owners.isChunkEmpty(chunk)) {
+        continue;
+      }
+      int chunkEnd = Math.min((chunk + 1) << CHUNK_BITS, size);
+      for (int index = chunk << CHUNK_BITS; index < chunkEnd; index++) {
+        if (owners.get(index) == playerSlot) {
+          owners.set(index, 0);
+          Bits.set(changedChunks, chunk);
+          if (Bits.get(alive, index)) {
+            checksum ^= cellHash(index, slotOwners[playerSlot]);
+            stepper.cellChanged(index, false);
+            aliveCounts[chunk]--;
+            population--;
+          }
+          Bits.clear(alive, index);
+        }
       }
     }
+    if (playerSlot != 0 && !isSlotPending(playerSlot)) {
+      slotOwners[playerSlot] = FREE_SLOT;
+    }
+  }
+
+  private boolean isSlotPending(int slot) {
+    for (int index = Bits.nextSetBit(pending, 0); index >= 0; index = Bits.nextSetBit(pending, index + 1)) {
+      if (pendingOwners.get(index) == slot) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
-   * Creates a point object with a given x, y values.
-   * If the point lies out of bounds then x, y values
-   * are wrapped around.
+   * Creates a cell object with state of a cell at a given index.
    */
-  private Point getPoint(int x, int y) {
-    int index = getIndex(x, y);
-    int wrappedX = index % width;
-    int wrappedY = index / width;
-    return new Point(wrappedX, wrappedY);
+  private Cell createCell(int index) {
+    Cell cell = new Cell(index % width, index / width);
+    cell.setIsAlive(Bits.get(alive, index));
+    cell.setOwnerId(slotOwners[owners.get(index)]);
+    return cell;
   }
 
   private int getIndex(int x, int y) {
@@ -296,23 +947,12 @@ public class Grid {
     return wrapIndex(index); // wrap it
   }
 
-  private int wrapIndex(int index) {
-    int maxSize = width * height;
-    if (index < 0) return index + (maxSize); // wrap around if neccesary
-    if (index >= maxSize) return index % (maxSize);
-    return index; // return index if not neccesary to wrap
-  }
-
   /**
-   * Returns x, y coordinates of a cell at a given index,
-   * as if the cells were contained in an 1D array.
-   * The coordinates are returned in a Point object.
+   * Wraps an index around the grid, as if the cells were contained in an 1D array.
    */
-  private Point getPoint(int index) {
-    index = wrapIndex(index);
-    int wrappedX = index % width;
-    int wrappedY = index / width;
-    return new Point(wrappedX, wrappedY);
+  private int wrapIndex(int index) {
+    if (index < 0 || index >= size) return Math.floorMod(index, size); // wrap around if neccesary
+    return index; // return index if not neccesary to wrap
   }
 
 }
@@ -0,0 +1,78 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.LookupTableRule;
+import soze.multilife.game.rule.Rule;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Available implementations of the simulation of a {@link Grid}.
+ * All engines give the same results, they differ in performance.
+ */
+public enum GridEngine {
+
+  /**
+   * Checks active cells one by one. Best for sparse boards.
+   */
+  SCALAR {
+    Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+      return new ScalarStepper();
+    }
+  },
+
+  /**
+   * Computes next states of 64 cells at once with bitwise operations. Best for
+   * dense boards and rules which keep most cells active. Rules with more than two states
+   * fall back to {@link #SCALAR}.
+   */
+  BITBOARD {
+    Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+      if (rule instanceof LookupTableRule && rule.getStates() == 2) {
+        return new BitboardStepper((LookupTableRule) rule);
+      }
+      return SCALAR.createStepper(rule, width, height, pool);
+    }
+  },
+
+  /**
+   * Keeps the board in a quadtree of shared nodes with memoized next generations.
+   * Best for very large boards with sparse or repeating patterns. Rules with more than
+   * two states fall back to {@link #SCALAR}.
+   */
+  HASHLIFE {
+    Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+      if (rule instanceof LookupTableRule && rule.getStates() == 2) {
+        return new HashlifeStepper((LookupTableRule) rule, width, height);
+      }
+      return SCALAR.createStepper(rule, width, height, pool);
+    }
+  },
+
+  /**
+   * Finds changing cells of bands of the grid in parallel, on the pool games are run on,
+   * or on the common {@link ForkJoinPool} if there is none. Best for single, very big
+   * and dense boards. Supports all rules.
+   */
+  PARALLEL {
+    Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+      return new ParallelStepper(rule, width, height, pool != null ? pool : ForkJoinPool.commonPool());
+    }
+  },
+
+  /**
+   * Sums alive neighbours of whole chunks at once, one byte per cell, with the Vector API
+   * if the server was built with the vector profile and runs with the jdk.incubator.vector
+   * module, or with a scalar loop otherwise. Supports all rules.
+   */
+  VECTOR {
+    Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+      return new RowStepper(NeighbourSums.create());
+    }
+  };
+
+  /**
+   * @param pool pool parallel engines run on, null for the common pool
+   */
+  abstract Stepper createStepper(Rule rule, int width, int height, ForkJoinPool pool);
+
+}
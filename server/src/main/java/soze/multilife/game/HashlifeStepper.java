@@ -0,0 +1,412 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.LookupTableRule;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps alive cells of the grid in a quadtree of canonical (hash-consed) nodes.
+ * Equal regions of the grid are represented by the same node, and the next generation
+ * of every node is computed once and memoized, so repeating and sparse patterns cost
+ * far less than checking every active cell.
+ * <p>
+ * To keep the wrapping of the {@link Grid}, the board is placed in the middle of a bigger
+ * universe surrounded by a one cell wide border, which contains cells from the opposite
+ * sides of the grid. The next generation of the board is the memoized result of the universe,
+ * and cells which change are found by comparing the old and new trees, skipping equal nodes.
+ * Owners of cells are not kept in the tree, the grid assigns them to changed cells.
+ * Supports rules with two states only.
+ */
+final class HashlifeStepper implements Stepper {
+
+  /**
+   * Minimum number of nodes kept before nodes which are not part of the
+   * current board are forgotten along with all memoized results.
+   */
+  private static final int MIN_GARBAGE_LIMIT = 1 << 16;
+
+  /**
+   * A square of 2^level x 2^level cells. Level 0 nodes are single cells.
+   */
+  private static final class Node {
+
+    private final Node nw;
+    private final Node ne;
+    private final Node sw;
+    private final Node se;
+    private final int level;
+    private final int id;
+    private final long population;
+    /**
+     * Memoized center of this node, one generation later.
+     */
+    private Node next;
+
+    private Node(int id, boolean alive) {
+      this.nw = this.ne = this.sw = this.se = null;
+      this.level = 0;
+      this.id = id;
+      this.population = alive ? 1 : 0;
+    }
+
+    private Node(int id, Node nw, Node ne, Node sw, Node se) {
+      this.nw = nw;
+      this.ne = ne;
+      this.sw = sw;
+      this.se = se;
+      this.level = nw.level + 1;
+      this.id = id;
+      this.population = nw.population + ne.population + sw.population + se.population;
+    }
+
+  }
+
+  private final Node dead = new Node(0, false);
+  private final Node alive = new Node(1, true);
+
+  private final int birthMask;
+  private final int surviveMask;
+  private final int width;
+  private final int height;
+  /**
+   * Level of the node containing the board.
+   */
+  private final int level;
+  private final Node[] emptyNodes;
+
+  /**
+   * Canonical nodes, an open addressing hash table.
+   */
+  private Node[] nodes = new Node[1 << 10];
+  private int nodeCount = 0;
+  private int nextId = 2;
+  /**
+   * Number of nodes after which garbage is collected.
+   */
+  private int garbageLimit = MIN_GARBAGE_LIMIT;
+
+  /**
+   * Alive cells of the board, in the top left corner of the node.
+   */
+  private Node board;
+
+  /**
+   * Indices of cells which change in the next generation.
+   */
+  private int[] changes = new int[64];
+  private int changeCount = 0;
+
+  HashlifeStepper(LookupTableRule rule, int width, int height) {
+    if (rule.getStates() != 2) {
+      throw new IllegalArgumentException("Hashlife stepper supports only rules with two states.");
+    }
+    this.birthMask = rule.getBirthMask();
+    this.surviveMask = rule.getSurviveMask();
+    this.width = width;
+    this.height = height;
+    int level = 1;
+    while ((1 << level) < Math.max(width, height)) {
+      level++;
+    }
+    this.level = level;
+    this.emptyNodes = new Node[level + 2];
+    this.board = empty(level);
+  }
+
+  public void cellChanged(int index, boolean alive) {
+    board = setCell(board, index % width, index / width, alive);
+  }
+
+  public void step(Grid grid) {
+    Node next = crop(result(createUniverse(grid.getAliveCells())), 0, 0);
+    changeCount = 0;
+    findChanges(board, next, 0, 0);
+    Arrays.sort(changes, 0, changeCount);
+    long[] active = grid.getActiveCells();
+    for (int i = 0; i < changeCount; i++) {
+      int index = changes[i];
+      // cells outside of the active set do not change in other engines either,
+      // this only happens when cells are changed without activating their neighbours
+      if (Bits.get(active, index)) {
+        int state = Bits.get(grid.getAliveCells(), index) ? -1 : 1;
+        grid.changeCell(index, state, grid.findAliveNeighbours(index));
+      }
+    }
+    if (nodeCount > garbageLimit) {
+      collectGarbage();
+    }
+  }
+
+  /**
+   * Places the board in the middle of a node twice its size and surrounds it
+   * with cells from the opposite sides of the grid.
+   */
+  private Node createUniverse(long[] aliveCells) {
+    Node e = empty(level - 1);
+    Node universe = create(
+      create(e, e, e, board.nw),
+      create(e, e, board.ne, e),
+      create(e, board.sw, e, e),
+      create(board.se, e, e, e)
+    );
+    int offset = 1 << (level - 1);
+    int size = width * height;
+    for (int x = -1; x <= width; x++) {
+      universe = setBorderCell(universe, aliveCells, size, offset, x, -1);
+      universe = setBorderCell(universe, aliveCells, size, offset, x, height);
+    }
+    for (int y = 0; y < height; y++) {
+      universe = setBorderCell(universe, aliveCells, size, offset, -1, y);
+      universe = setBorderCell(universe, aliveCells, size, offset, width, y);
+    }
+    return universe;
+  }
+
+  private Node setBorderCell(Node universe, long[] aliveCells, int size, int offset, int x, int y) {
+    if (Bits.get(aliveCells, Math.floorMod(x + y * width, size))) {
+      return setCell(universe, x + offset, y + offset, true);
+    }
+    return universe;
+  }
+
+  /**
+   * Removes cells outside of the board from a node of the board level,
+   * whose top left corner is at x, y.
+   */
+  private Node crop(Node node, int x, int y) {
+    int size = 1 << node.level;
+    if (node.population == 0 || (x + size <= width && y + size <= height)) {
+      return node;
+    }
+    if (x >= width || y >= height) {
+      return empty(node.level);
+    }
+    int half = size >> 1;
+    return create(
+      crop(node.nw, x, y),
+      crop(node.ne, x + half, y),
+      crop(node.sw, x, y + half),
+      crop(node.se, x + half, y + half)
+    );
+  }
+
+  /**
+   * Collects indices of cells which differ between two nodes of the same level,
+   * whose top left corner is at x, y.
+   */
+  private void findChanges(Node current, Node next, int x, int y) {
+    if (current == next) {
+      return;
+    }
+    if (current.level == 0) {
+      addChange(x + y * width);
+      return;
+    }
+    int half = 1 << (current.level - 1);
+    findChanges(current.nw, next.nw, x, y);
+    findChanges(current.ne, next.ne, x + half, y);
+    findChanges(current.sw, next.sw, x, y + half);
+    findChanges(current.se, next.se, x + half, y + half);
+  }
+
+  private void addChange(int index) {
+    if (changeCount == changes.length) {
+      changes = Arrays.copyOf(changes, changes.length * 2);
+    }
+    changes[changeCount++] = index;
+  }
+
+  /**
+   * Returns the center of a node (level 2 or higher), one generation later.
+   */
+  private Node result(Node node) {
+    if (node.next != null) {
+      return node.next;
+    }
+    Node result;
+    if (node.population == 0) {
+      result = empty(node.level - 1);
+    } else if (node.level == 2) {
+      result = resultOfLeaf(node);
+    } else {
+      Node n00 = result(node.nw);
+      Node n01 = result(horizontal(node.nw, node.ne));
+      Node n02 = result(node.ne);
+      Node n10 = result(vertical(node.nw, node.sw));
+      Node n11 = result(center(node));
+      Node n12 = result(vertical(node.ne, node.se));
+      Node n20 = result(node.sw);
+      Node n21 = result(horizontal(node.sw, node.se));
+      Node n22 = result(node.se);
+      result = create(
+        center(create(n00, n01, n10, n11)),
+        center(create(n01, n02, n11, n12)),
+        center(create(n10, n11, n20, n21)),
+        center(create(n11, n12, n21, n22))
+      );
+    }
+    node.next = result;
+    return result;
+  }
+
+  /**
+   * Computes the next generation of the center 2x2 cells of a 4x4 node.
+   */
+  private Node resultOfLeaf(Node node) {
+    // cells of the node, bit x + 4 * y
+    int cells = 0;
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        if (getCell(node, x, y)) {
+          cells |= 1 << (x + 4 * y);
+        }
+      }
+    }
+    return create(
+      nextCell(cells, 1, 1),
+      nextCell(cells, 2, 1),
+      nextCell(cells, 1, 2),
+      nextCell(cells, 2, 2)
+    );
+  }
+
+  private Node nextCell(int cells, int x, int y) {
+    int count = 0;
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        if (i == 0 && j == 0) continue;
+        count += (cells >>> ((x + i) + 4 * (y + j))) & 1;
+      }
+    }
+    boolean isAlive = ((cells >>> (x + 4 * y)) & 1) != 0;
+    int mask = isAlive ? surviveMask : birthMask;
+    return (mask & (1 << count)) != 0 ? alive : dead;
+  }
+
+  private boolean getCell(Node node, int x, int y) {
+    while (node.level > 0) {
+      int half = 1 << (node.level - 1);
+      if (y < half) {
+        node = x < half ? node.nw : node.ne;
+      } else {
+        node = x < half ? node.sw : node.se;
+        y -= half;
+      }
+      if (x >= half) {
+        x -= half;
+      }
+    }
+    return node.population != 0;
+  }
+
+  private Node setCell(Node node, int x, int y, boolean isAlive) {
+    if (node.level == 0) {
+      return isAlive ? alive : dead;
+    }
+    int half = 1 << (node.level - 1);
+    if (y < half) {
+      if (x < half) {
+        return create(setCell(node.nw, x, y, isAlive), node.ne, node.sw, node.se);
+      }
+      return create(node.nw, setCell(node.ne, x - half, y, isAlive), node.sw, node.se);
+    }
+    if (x < half) {
+      return create(node.nw, node.ne, setCell(node.sw, x, y - half, isAlive), node.se);
+    }
+    return create(node.nw, node.ne, node.sw, setCell(node.se, x - half, y - half, isAlive));
+  }
+
+  private Node horizontal(Node w, Node e) {
+    return create(w.ne, e.nw, w.se, e.sw);
+  }
+
+  private Node vertical(Node n, Node s) {
+    return create(n.sw, n.se, s.nw, s.ne);
+  }
+
+  private Node center(Node node) {
+    return create(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+  }
+
+  private Node empty(int level) {
+    if (level == 0) {
+      return dead;
+    }
+    Node node = emptyNodes[level];
+    if (node == null) {
+      Node child = empty(level - 1);
+      node = create(child, child, child, child);
+      emptyNodes[level] = node;
+    }
+    return node;
+  }
+
+  /**
+   * Returns the canonical node with given children.
+   */
+  private Node create(Node nw, Node ne, Node sw, Node se) {
+    int mask = nodes.length - 1;
+    int slot = hash(nw, ne, sw, se) & mask;
+    Node node;
+    while ((node = nodes[slot]) != null) {
+      if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) {
+        return node;
+      }
+      slot = (slot + 1) & mask;
+    }
+    node = new Node(nextId++, nw, ne, sw, se);
+    nodes[slot] = node;
+    if (++nodeCount * 2 > nodes.length) {
+      resize(nodes.length * 2);
+    }
+    return node;
+  }
+
+  private static int hash(Node nw, Node ne, Node sw, Node se) {
+    int hash = nw.id;
+    hash = hash * 31 + ne.id;
+    hash = hash * 31 + sw.id;
+    hash = hash * 31 + se.id;
+    return hash ^ (hash >>> 16);
+  }
+
+  private void resize(int capacity) {
+    Node[] oldNodes = nodes;
+    nodes = new Node[capacity];
+    int mask = capacity - 1;
+    for (Node node : oldNodes) {
+      if (node == null) continue;
+      int slot = hash(node.nw, node.ne, node.sw, node.se) & mask;
+      while (nodes[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      nodes[slot] = node;
+    }
+  }
+
+  /**
+   * Forgets all nodes and memoized results, keeping only the current board.
+   */
+  private void collectGarbage() {
+    nodes = new Node[1 << 10];
+    nodeCount = 0;
+    Arrays.fill(emptyNodes, null);
+    board = copy(board, new IdentityHashMap<>());
+    garbageLimit = Math.max(MIN_GARBAGE_LIMIT, nodeCount * 4);
+  }
+
+  private Node copy(Node node, Map<Node, Node> copies) {
+    if (node.level == 0) {
+      return node;
+    }
+    Node copy = copies.get(node);
+    if (copy == null) {
+      copy = create(copy(node.nw, copies), copy(node.ne, copies), copy(node.sw, copies), copy(node.se, copies));
+      copies.put(node, copy);
+    }
+    return copy;
+  }
+
+}
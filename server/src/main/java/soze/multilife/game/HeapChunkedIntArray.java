@@ -0,0 +1,83 @@
+package soze.multilife.game;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ChunkedIntArray} whose chunks are int arrays on the Java heap.
+ */
+final class HeapChunkedIntArray implements ChunkedIntArray {
+
+  private final int chunkBits;
+  private final int chunkMask;
+  private final int[][] chunks;
+  /**
+   * Number of non-zero values in every chunk.
+   */
+  private final int[] nonZeroCounts;
+
+  /**
+   * @param size      number of elements
+   * @param chunkBits log2 of the number of elements in a chunk
+   */
+  HeapChunkedIntArray(int size, int chunkBits) {
+    this.chunkBits = chunkBits;
+    this.chunkMask = (1 << chunkBits) - 1;
+    int chunkCount = (int) (((long) size + chunkMask) >>> chunkBits);
+    this.chunks = new int[chunkCount][];
+    this.nonZeroCounts = new int[chunkCount];
+  }
+
+  public int get(int index) {
+    int[] chunk = chunks[index >>> chunkBits];
+    return chunk == null ? 0 : chunk[index & chunkMask];
+  }
+
+  public void set(int index, int value) {
+    int chunkIndex = index >>> chunkBits;
+    int[] chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      if (value == 0) {
+        return;
+      }
+      chunk = new int[chunkMask + 1];
+      chunks[chunkIndex] = chunk;
+    }
+    int previous = chunk[index & chunkMask];
+    if (previous == 0 && value != 0) {
+      nonZeroCounts[chunkIndex]++;
+    } else if (previous != 0 && value == 0 && --nonZeroCounts[chunkIndex] == 0) {
+      chunks[chunkIndex] = null;
+      return;
+    }
+    chunk[index & chunkMask] = value;
+  }
+
+  public void clearChunk(int chunkIndex) {
+    chunks[chunkIndex] = null;
+    nonZeroCounts[chunkIndex] = 0;
+  }
+
+  public boolean isChunkEmpty(int chunkIndex) {
+    return chunks[chunkIndex] == null;
+  }
+
+  public int getChunkCount() {
+    return chunks.length;
+  }
+
+  public void free() {
+    Arrays.fill(chunks, null);
+    Arrays.fill(nonZeroCounts, 0);
+  }
+
+  public int getAllocatedChunkCount() {
+    int count = 0;
+    for (int[] chunk : chunks) {
+      if (chunk != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,230 @@
+package soze.multilife.game;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Alive cells a new grid is seeded with, kept as a bitset of width * height bits,
+ * see {@link Grid#seed(InitialPattern, int)}. A pattern is created once
+ * and can seed any number of grids, it is not modified.
+ * <p>
+ * Patterns are either random, read from a file in the RLE format used by most
+ * game of life programs, or read from an image, in which dark pixels are alive cells.
+ */
+public final class InitialPattern {
+
+  private static final String RLE_EXTENSION = ".rle";
+
+  private final int width;
+  private final int height;
+  private final long[] cells;
+
+  private InitialPattern(int width, int height, long[] cells) {
+    this.width = width;
+    this.height = height;
+    this.cells = cells;
+  }
+
+  private InitialPattern(int width, int height) {
+    this(width, height, new long[Bits.wordCount(width * height)]);
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  boolean isAlive(int x, int y) {
+    return Bits.get(cells, x + y * width);
+  }
+
+  /**
+   * Returns alive cells of this pattern placed in the centre of a grid of a given size,
+   * as a bitset of the grid. Cells which do not fit in the grid are left out.
+   */
+  long[] placeIn(int gridWidth, int gridHeight) {
+    if (gridWidth == width && gridHeight == height) {
+      return cells;
+    }
+    long[] gridCells = new long[Bits.wordCount(gridWidth * gridHeight)];
+    int offsetX = (gridWidth - width) / 2;
+    int offsetY = (gridHeight - height) / 2;
+    for (int index = Bits.nextSetBit(cells, 0); index >= 0; index = Bits.nextSetBit(cells, index + 1)) {
+      int x = index % width + offsetX;
+      int y = index / width + offsetY;
+      if (x >= 0 && x < gridWidth && y >= 0 && y < gridHeight) {
+        Bits.set(gridCells, x + y * gridWidth);
+      }
+    }
+    return gridCells;
+  }
+
+  /**
+   * Creates a pattern in which every cell is alive with a given probability.
+   */
+  public static InitialPattern random(int width, int height, float density) {
+    return random(width, height, density, new SplittableRandom());
+  }
+
+  /**
+   * Creates a pattern in which every cell is alive with a given probability,
+   * the same for the same seed.
+   */
+  public static InitialPattern random(int width, int height, float density, long seed) {
+    return random(width, height, density, new SplittableRandom(seed));
+  }
+
+  private static InitialPattern random(int width, int height, float density, SplittableRandom random) {
+    InitialPattern pattern = new InitialPattern(width, height);
+    if (density <= 0) {
+      return pattern;
+    }
+    int size = width * height;
+    // compares 53 random bits with the density, like nextDouble() < density without the conversion
+    long threshold = (long) ((double) density * (1L << 53));
+    long[] cells = pattern.cells;
+    for (int word = 0; word < cells.length; word++) {
+      int bits = Math.min(64, size - (word << 6));
+      long value = 0;
+      for (int bit = 0; bit < bits; bit++) {
+        if ((random.nextLong() >>> 11) < threshold) {
+          value |= 1L << bit;
+        }
+      }
+      cells[word] = value;
+    }
+    return pattern;
+  }
+
+  /**
+   * Reads a pattern from a file, an RLE file if its name ends with .rle, an image otherwise.
+   *
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file does not contain a valid pattern
+   */
+  public static InitialPattern load(Path path) throws IOException {
+    if (path.getFileName().toString().toLowerCase().endsWith(RLE_EXTENSION)) {
+      try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        return parseRle(reader);
+      }
+    }
+    BufferedImage image = ImageIO.read(path.toFile());
+    if (image == null) {
+      throw new IllegalArgumentException("File [" + path + "] is neither an RLE file nor a supported image.");
+    }
+    return fromImage(image);
+  }
+
+  /**
+   * Parses a pattern in the RLE format. The header line (x = width, y = height, ...)
+   * is required, lines starting with # are comments. b and . are dead cells, all other
+   * letters are alive cells, $ ends a row and ! ends the pattern.
+   *
+   * @throws IOException if the pattern cannot be read
+   * @throws IllegalArgumentException if the pattern is not valid
+   */
+  public static InitialPattern parseRle(Reader reader) throws IOException {
+    BufferedReader lines = new BufferedReader(reader);
+    String line;
+    InitialPattern pattern = null;
+    int x = 0;
+    int y = 0;
+    int count = 0;
+    while ((line = lines.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      if (pattern == null) {
+        pattern = parseRleHeader(line);
+        continue;
+      }
+      for (int i = 0; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (Character.isDigit(c)) {
+          count = count * 10 + (c - '0');
+          continue;
+        }
+        if (Character.isWhitespace(c)) {
+          continue;
+        }
+        int run = count == 0 ? 1 : count;
+        count = 0;
+        if (c == '!') {
+          return pattern;
+        } else if (c == '$') {
+          y += run;
+          x = 0;
+        } else if (c == 'b' || c == '.') {
+          x += run;
+        } else if (Character.isLetter(c)) {
+          if (x + run > pattern.width || y >= pattern.height) {
+            throw new IllegalArgumentException("Pattern does not fit in its size " + pattern.width + "x" + pattern.height + ".");
+          }
+          for (int j = 0; j < run; j++) {
+            Bits.set(pattern.cells, x++ + y * pattern.width);
+          }
+        } else {
+          throw new IllegalArgumentException("Invalid character [" + c + "] in pattern.");
+        }
+      }
+    }
+    if (pattern == null) {
+      throw new IllegalArgumentException("Pattern has no header.");
+    }
+    return pattern;
+  }
+
+  private static InitialPattern parseRleHeader(String line) {
+    int width = -1;
+    int height = -1;
+    for (String entry : line.split(",")) {
+      String[] tokens = entry.split("=");
+      if (tokens.length != 2) {
+        throw new IllegalArgumentException("Invalid pattern header [" + line + "].");
+      }
+      String key = tokens[0].trim();
+      if (key.equals("x")) {
+        width = Integer.parseInt(tokens[1].trim());
+      } else if (key.equals("y")) {
+        height = Integer.parseInt(tokens[1].trim());
+      }
+    }
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid pattern size in header [" + line + "].");
+    }
+    return new InitialPattern(width, height);
+  }
+
+  /**
+   * Creates a pattern from an image, dark opaque pixels are alive cells.
+   */
+  public static InitialPattern fromImage(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    InitialPattern pattern = new InitialPattern(width, height);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        int argb = row[x];
+        int brightness = (((argb >> 16) & 0xff) + ((argb >> 8) & 0xff) + (argb & 0xff)) / 3;
+        if ((argb >>> 24) >= 128 && brightness < 128) {
+          Bits.set(pattern.cells, x + y * width);
+        }
+      }
+    }
+    return pattern;
+  }
+
+}
@@ -0,0 +1,37 @@
+package soze.multilife.game;
+
+/**
+ * Sums alive neighbours of a row of cells stored one byte per cell.
+ */
+interface NeighbourSums {
+
+  /**
+   * Name of the implementation using the incubating Vector API. It is only compiled
+   * with the vector profile, and only runs if the jdk.incubator.vector module is added.
+   */
+  String VECTOR_IMPLEMENTATION = "soze.multilife.game.VectorNeighbourSums";
+
+  /**
+   * Cell j of the row has cells j, j + 1 and j + 2 of above and below as neighbours,
+   * and cells j and j + 2 of middle. Rows of neighbours have to be at least length + 2 long.
+   *
+   * @param above  cells above the row, shifted one cell left
+   * @param middle cells of the row, shifted one cell left
+   * @param below  cells below the row, shifted one cell left
+   * @param sums   receives numbers of alive neighbours of cells of the row
+   * @param length number of cells of the row
+   */
+  void sum(byte[] above, byte[] middle, byte[] below, byte[] sums, int length);
+
+  /**
+   * Returns the vectorized implementation if it is available, a scalar one otherwise.
+   */
+  static NeighbourSums create() {
+    try {
+      return (NeighbourSums) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return new ScalarNeighbourSums();
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+package soze.multilife.game;
+
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits memory reserved by grids outside of the Java heap. Shared by all games,
+ * so the size of boards is limited by this budget rather than by the heap size.
+ */
+public final class OffHeapBudget {
+
+  private final long limit;
+  private final AtomicLong reserved = new AtomicLong();
+
+  /**
+   * @param limit number of bytes which can be reserved
+   */
+  public OffHeapBudget(long limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Off-heap budget has to be positive.");
+    }
+    this.limit = limit;
+  }
+
+  /**
+   * Reserves a given number of bytes.
+   *
+   * @throws OffHeapBudgetExceededException if the budget would be exceeded
+   */
+  void reserve(long bytes) {
+    long current;
+    do {
+      current = reserved.get();
+      if (current + bytes > limit) {
+        throw new OffHeapBudgetExceededException("Cannot reserve [" + bytes + "] bytes off-heap, ["
+          + current + "] of [" + limit + "] bytes are already reserved.");
+      }
+    } while (!reserved.compareAndSet(current, current + bytes));
+  }
+
+  void release(long bytes) {
+    reserved.addAndGet(-bytes);
+  }
+
+  public long getReserved() {
+    return reserved.get();
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+}
@@ -0,0 +1,163 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.LookupTableRule;
+import soze.multilife.game.rule.Rule;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits awake chunks of the grid into bands of consecutive chunks and finds
+ * changing cells of all bands in parallel, on a shared {@link ForkJoinPool}.
+ * During this phase the grid is only read, so cells next to the edge of a band
+ * simply read the alive cells of the neighbouring band.
+ * <p>
+ * Changed cells are then handed to the grid on the calling thread, in ascending index
+ * order, so owners and point callbacks are exactly the same as in a serial run.
+ * Rules with two states are computed 64 cells at a time like in {@link BitboardStepper},
+ * other rules cell by cell like in {@link ScalarStepper}.
+ */
+final class ParallelStepper implements Stepper {
+
+  /**
+   * Number of chunks below which a band is not split any further.
+   */
+  private static final int CHUNKS_PER_BAND = 8;
+
+  private final ForkJoinPool pool;
+  private final Rule rule;
+  /**
+   * Used to compute two state rules, null for other rules.
+   */
+  private final BitboardStepper bitboard;
+
+  /**
+   * Cells which change their state, filled by bands.
+   */
+  private final long[] changed;
+  /**
+   * Dying cells which move to the next dying state, filled by bands.
+   */
+  private final long[] decaying;
+  private final int[] awakeChunks;
+  private int awakeChunkCount;
+
+  ParallelStepper(Rule rule, int width, int height, ForkJoinPool pool) {
+    this.rule = rule;
+    this.pool = pool;
+    if (rule instanceof LookupTableRule && rule.getStates() == 2) {
+      this.bitboard = new BitboardStepper((LookupTableRule) rule);
+    } else {
+      this.bitboard = null;
+    }
+    int size = width * height;
+    this.changed = new long[Bits.wordCount(size)];
+    this.decaying = new long[Bits.wordCount(size)];
+    this.awakeChunks = new int[(size + Grid.CHUNK_SIZE - 1) / Grid.CHUNK_SIZE];
+  }
+
+  public void step(Grid grid) {
+    awakeChunkCount = 0;
+    long[] awake = grid.getAwakeChunks();
+    for (int chunk = Bits.nextSetBit(awake, 0); chunk >= 0; chunk = Bits.nextSetBit(awake, chunk + 1)) {
+      awakeChunks[awakeChunkCount++] = chunk;
+    }
+    Band band = new Band(grid, 0, awakeChunkCount);
+    if (awakeChunkCount <= CHUNKS_PER_BAND) {
+      band.compute();
+    } else {
+      pool.invoke(band);
+    }
+    applyChanges(grid);
+  }
+
+  /**
+   * Hands changed cells to the grid in ascending index order and clears them.
+   */
+  private void applyChanges(Grid grid) {
+    long[] alive = grid.getAliveCells();
+    for (int i = 0; i < awakeChunkCount; i++) {
+      int chunk = awakeChunks[i];
+      int end = Math.min((chunk + 1) * Grid.CHUNK_WORDS, changed.length);
+      for (int word = chunk * Grid.CHUNK_WORDS; word < end; word++) {
+        long cells = changed[word] | decaying[word];
+        while (cells != 0) {
+          int bit = Long.numberOfTrailingZeros(cells);
+          cells &= cells - 1;
+          int index = (word << 6) + bit;
+          if ((decaying[word] & (1L << bit)) != 0) {
+            grid.decay(index);
+          } else {
+            int state = Bits.get(alive, index) ? -1 : 1;
+            grid.changeCell(index, state, grid.findAliveNeighbours(index));
+          }
+        }
+        changed[word] = 0;
+        decaying[word] = 0;
+      }
+    }
+  }
+
+  /**
+   * Finds changed cells in awake chunks from (inclusive) to (exclusive).
+   * Every band writes only words of its own chunks.
+   */
+  private final class Band extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Grid grid;
+    private final int from;
+    private final int to;
+
+    private Band(Grid grid, int from, int to) {
+      this.grid = grid;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > CHUNKS_PER_BAND) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Band(grid, from, middle), new Band(grid, middle, to));
+        return;
+      }
+      long[] active = grid.getActiveCells();
+      for (int i = from; i < to; i++) {
+        int chunk = awakeChunks[i];
+        int end = Math.min((chunk + 1) * Grid.CHUNK_WORDS, active.length);
+        for (int word = chunk * Grid.CHUNK_WORDS; word < end; word++) {
+          if (active[word] == 0) {
+            continue;
+          }
+          if (bitboard != null) {
+            changed[word] = bitboard.findChangedCells(grid, word);
+          } else {
+            computeCells(word, active[word]);
+          }
+        }
+      }
+    }
+
+    private void computeCells(int word, long activeWord) {
+      long[] alive = grid.getAliveCells();
+      long changedCells = 0;
+      long decayingCells = 0;
+      while (activeWord != 0) {
+        int bit = Long.numberOfTrailingZeros(activeWord);
+        activeWord &= activeWord - 1;
+        int index = (word << 6) + bit;
+        if (grid.isDying(index)) {
+          decayingCells |= 1L << bit;
+        } else if (rule.apply(grid.countAliveNeighbours(index), Bits.get(alive, index)) != 0) {
+          changedCells |= 1L << bit;
+        }
+      }
+      changed[word] = changedCells;
+      decaying[word] = decayingCells;
+    }
+
+  }
+
+}
@@ -0,0 +1,85 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.Rule;
+
+import java.util.Arrays;
+
+/**
+ * Copies every awake chunk of the grid, together with cells above and below it,
+ * into rows of one byte per cell and sums alive neighbours of the whole chunk at once.
+ * Sums are computed by {@link NeighbourSums}, with SIMD instructions if the Vector API
+ * is available. The rule is then applied to the whole row at once, and only results
+ * of active cells are used. Supports all rules.
+ */
+final class RowStepper implements Stepper {
+
+  private final NeighbourSums sums;
+  private final byte[] above = new byte[Grid.CHUNK_SIZE + 2];
+  private final byte[] middle = new byte[Grid.CHUNK_SIZE + 2];
+  private final byte[] below = new byte[Grid.CHUNK_SIZE + 2];
+  private final byte[] counts = new byte[Grid.CHUNK_SIZE];
+  private final byte[] states = new byte[Grid.CHUNK_SIZE];
+  private final byte[] results = new byte[Grid.CHUNK_SIZE];
+
+  RowStepper(NeighbourSums sums) {
+    this.sums = sums;
+  }
+
+  public void step(Grid grid) {
+    long[] alive = grid.getAliveCells();
+    long[] active = grid.getActiveCells();
+    long[] awake = grid.getAwakeChunks();
+    Rule rule = grid.getRule();
+    int size = grid.getSize();
+    int width = grid.getWidth();
+    for (int chunk = Bits.nextSetBit(awake, 0); chunk >= 0; chunk = Bits.nextSetBit(awake, chunk + 1)) {
+      int from = chunk << Grid.CHUNK_BITS;
+      int to = Math.min(from + Grid.CHUNK_SIZE, size);
+      int length = to - from;
+      copyRow(alive, size, from - width - 1, above, length + 2);
+      copyRow(alive, size, from - 1, middle, length + 2);
+      copyRow(alive, size, from + width - 1, below, length + 2);
+      sums.sum(above, middle, below, counts, length);
+      System.arraycopy(middle, 1, states, 0, length);
+      rule.apply(counts, states, results, 0, length);
+      for (int index = Bits.nextSetBit(active, from, to); index >= 0; index = Bits.nextSetBit(active, index + 1, to)) {
+        if (grid.isDying(index)) {
+          grid.decay(index);
+          continue;
+        }
+        int state = results[index - from];
+        if (state != 0) {
+          grid.changeCell(index, state, grid.findAliveNeighbours(index));
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies alive cells starting at a given index, wrapped around the grid, one byte per cell.
+   */
+  private static void copyRow(long[] alive, int size, int start, byte[] row, int length) {
+    if (start < 0 || start + length > size) {
+      for (int i = 0; i < length; i++) {
+        int index = Math.floorMod(start + i, size);
+        row[i] = (byte) ((alive[index >>> 6] >>> index) & 1);
+      }
+      return;
+    }
+    int i = 0;
+    while (i < length) {
+      int index = start + i;
+      long word = alive[index >>> 6] >>> index;
+      int end = Math.min(length, i + 64 - (index & 63));
+      if (word == 0) {
+        Arrays.fill(row, i, end, (byte) 0);
+        i = end;
+        continue;
+      }
+      for (; i < end; i++, word >>>= 1) {
+        row[i] = (byte) (word & 1);
+      }
+    }
+  }
+
+}
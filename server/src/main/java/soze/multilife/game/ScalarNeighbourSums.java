@@ -0,0 +1,16 @@
+package soze.multilife.game;
+
+/**
+ * Sums neighbours one cell at a time.
+ */
+final class ScalarNeighbourSums implements NeighbourSums {
+
+  public void sum(byte[] above, byte[] middle, byte[] below, byte[] sums, int length) {
+    for (int i = 0; i < length; i++) {
+      sums[i] = (byte) (above[i] + above[i + 1] + above[i + 2]
+        + middle[i] + middle[i + 2]
+        + below[i] + below[i + 1] + below[i + 2]);
+    }
+  }
+
+}
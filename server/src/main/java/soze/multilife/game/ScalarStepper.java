@@ -0,0 +1,27 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.Rule;
+
+/**
+ * Checks active cells one by one, counting their alive neighbours.
+ * Supports all rules.
+ */
+final class ScalarStepper implements Stepper {
+
+  public void step(Grid grid) {
+    long[] alive = grid.getAliveCells();
+    Rule rule = grid.getRule();
+    for (int index = grid.nextActiveCell(0); index >= 0; index = grid.nextActiveCell(index + 1)) {
+      if (grid.isDying(index)) {
+        grid.decay(index);
+        continue;
+      }
+      int aliveNeighbourCount = grid.findAliveNeighbours(index);
+      int state = rule.apply(aliveNeighbourCount, Bits.get(alive, index));
+      if (state != 0) {
+        grid.changeCell(index, state, aliveNeighbourCount);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,26 @@
+package soze.multilife.game;
+
+/**
+ * Finds cells of a {@link Grid} which change their state in the next iteration.
+ */
+interface Stepper {
+
+  /**
+   * Goes through active cells of the grid. For every active cell which changes
+   * its state, calls {@link Grid#findAliveNeighbours(int)} and then
+   * {@link Grid#changeCell(int, int, int)}. Cells have to be changed in
+   * ascending order of their indices, so that all steppers award points in the same order.
+   * Implementations should avoid allocating.
+   */
+  void step(Grid grid);
+
+  /**
+   * Called when the alive state of a cell changes, after the stepper is done
+   * with an iteration or when cells are changed outside of an iteration.
+   * For steppers which keep their own copy of the alive cells.
+   */
+  default void cellChanged(int index, boolean alive) {
+
+  }
+
+}
@@ -0,0 +1,34 @@
+package soze.multilife.game;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sums neighbours of as many cells at once as the widest vector of the CPU holds.
+ * Compiled only with the vector profile, see {@link NeighbourSums#create()}.
+ */
+final class VectorNeighbourSums implements NeighbourSums {
+
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+  public void sum(byte[] above, byte[] middle, byte[] below, byte[] sums, int length) {
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      ByteVector.fromArray(SPECIES, above, i)
+        .add(ByteVector.fromArray(SPECIES, above, i + 1))
+        .add(ByteVector.fromArray(SPECIES, above, i + 2))
+        .add(ByteVector.fromArray(SPECIES, middle, i))
+        .add(ByteVector.fromArray(SPECIES, middle, i + 2))
+        .add(ByteVector.fromArray(SPECIES, below, i))
+        .add(ByteVector.fromArray(SPECIES, below, i + 1))
+        .add(ByteVector.fromArray(SPECIES, below, i + 2))
+        .intoArray(sums, i);
+    }
+    for (; i < length; i++) {
+      sums[i] = (byte) (above[i] + above[i + 1] + above[i + 2]
+        + middle[i] + middle[i + 2]
+        + below[i] + below[i + 1] + below[i + 2]);
+    }
+  }
+
+}
@@ -0,0 +1,15 @@
+package soze.multilife.game.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a saved game cannot be restored, because its file is not a valid game file
+ * or its cells do not match their checksum. Reading the file again would fail the same way.
+ */
+public class CorruptGameFileException extends IOException {
+
+  public CorruptGameFileException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,13 @@
+package soze.multilife.game.exceptions;
+
+/**
+ * Thrown when a grid cannot reserve memory outside of the Java heap,
+ * because other grids already use up the off-heap budget.
+ */
+public class OffHeapBudgetExceededException extends IllegalStateException {
+
+  public OffHeapBudgetExceededException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,91 @@
+package soze.multilife.game.rule;
+
+/**
+ * A {@link Rule} compiled into a lookup table. The table has an entry
+ * for every number of alive neighbours (0-8) and both cell states,
+ * so applying the rule is a single array read.
+ * Instances are created by {@link RuleFactory} and {@link RuleType}.
+ */
+public final class LookupTableRule implements Rule {
+
+  private static final int MAX_NEIGHBOURS = 8;
+
+  private final int birthMask;
+  private final int surviveMask;
+  private final int states;
+
+  /**
+   * Results of this rule, indexed by (aliveNeighbours << 1) | (alive ? 1 : 0).
+   */
+  private final byte[] table = new byte[(MAX_NEIGHBOURS + 1) * 2];
+
+  /**
+   * Creates a rule from bitmasks. If bit n of birthMask is set, a dead cell with
+   * n alive neighbours comes alive. If bit n of surviveMask is set, an alive cell with
+   * n alive neighbours stays alive, otherwise it dies.
+   * States is the number of cell states, see {@link Rule#getStates()}.
+   */
+  LookupTableRule(int birthMask, int surviveMask, int states) {
+    this.birthMask = birthMask;
+    this.surviveMask = surviveMask;
+    this.states = states;
+    for (int n = 0; n <= MAX_NEIGHBOURS; n++) {
+      table[n << 1] = (byte) ((birthMask & (1 << n)) != 0 ? 1 : 0);
+      table[(n << 1) | 1] = (byte) ((surviveMask & (1 << n)) != 0 ? 0 : -1);
+    }
+  }
+
+  public int apply(int aliveNeighbours, boolean alive) {
+    return table[(aliveNeighbours << 1) | (alive ? 1 : 0)];
+  }
+
+  public void apply(byte[] aliveNeighbours, byte[] alive, byte[] result, int offset, int length) {
+    final byte[] table = this.table;
+    for (int i = offset; i < offset + length; i++) {
+      result[i] = table[(aliveNeighbours[i] << 1) | (alive[i] & 1)];
+    }
+  }
+
+  /**
+   * Returns a bitmask of neighbour counts which cause a dead cell to come alive.
+   */
+  public int getBirthMask() {
+    return birthMask;
+  }
+
+  /**
+   * Returns a bitmask of neighbour counts which let an alive cell stay alive.
+   */
+  public int getSurviveMask() {
+    return surviveMask;
+  }
+
+  public int getStates() {
+    return states;
+  }
+
+  public String getRuleString() {
+    StringBuilder sb = new StringBuilder("B");
+    appendNumbers(sb, birthMask);
+    sb.append("/S");
+    appendNumbers(sb, surviveMask);
+    if (states > 2) {
+      sb.append("/C").append(states);
+    }
+    return sb.toString();
+  }
+
+  private static void appendNumbers(StringBuilder sb, int mask) {
+    for (int n = 0; n <= MAX_NEIGHBOURS; n++) {
+      if ((mask & (1 << n)) != 0) {
+        sb.append(n);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LookupTableRule{" + getRuleString() + '}';
+  }
+
+}
@@ -13,4 +13,31 @@ public interface Rule {
    */
   public int apply(int aliveNeighbours, boolean alive);
 
+  /**
+   * Applies this rule to a row of cells. For every i in [offset, offset + length),
+   * result[i] is set to the result of applying this rule to a cell with
+   * aliveNeighbours[i] alive neighbours, which is alive if the lowest bit of alive[i] is set.
+   */
+  public default void apply(byte[] aliveNeighbours, byte[] alive, byte[] result, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      result[i] = (byte) apply(aliveNeighbours[i], (alive[i] & 1) != 0);
+    }
+  }
+
+  /**
+   * Returns the number of states a cell can be in. Rules with two states
+   * only have alive and dead cells. Rules with more states (Generations rules) let
+   * a cell which dies go through getStates() - 2 dying states before it is dead.
+   * A dying cell is not alive, so it does not count as an alive neighbour,
+   * and it cannot come alive.
+   */
+  public default int getStates() {
+    return 2;
+  }
+
+  /**
+   * Returns this rule in the B/S notation, eg. B3/S23 or B2/S/C3.
+   */
+  public String getRuleString();
+
 }
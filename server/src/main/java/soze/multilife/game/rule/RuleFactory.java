@@ -1,12 +1,19 @@
 package soze.multilife.game.rule;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An object containing static methods to retrieve game of life rules.
  */
 public class RuleFactory {
 
+  /**
+   * Rules parsed from rule strings, so that every rule string is compiled once.
+   */
+  private static final Map<String, Rule> PARSED_RULES = new ConcurrentHashMap<>();
+
   /**
    * Returns a Rule object for a given RuleType.
    */
@@ -16,11 +23,20 @@ public class RuleFactory {
 
   /**
    * Finds an appropriate RuleType and returns a Rule
-   * associated with it.
+   * associated with it. If there is no RuleType with that name,
+   * the given string is parsed as a rule string (eg. B36/S23 or B2/S/C3).
+   *
+   * @throws IllegalArgumentException if the rule is neither a RuleType nor a valid rule string
    */
   public static Rule getRule(String rule) {
     Objects.requireNonNull(rule);
-    return getRule(RuleType.valueOf(rule.toUpperCase()));
+    String name = rule.trim().toUpperCase();
+    for (RuleType type : RuleType.values()) {
+      if (type.name().equals(name)) {
+        return getRule(type);
+      }
+    }
+    return PARSED_RULES.computeIfAbsent(name, RuleParser::parse);
   }
 
 }
@@ -0,0 +1,94 @@
+package soze.multilife.game.rule;
+
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses game of life rule strings into compiled rules.
+ * A rule string consists of tokens separated by '/', each token starts with a letter:
+ * B followed by digits - numbers of alive neighbours that cause a dead cell to come alive,
+ * S followed by digits - numbers of alive neighbours that let a cell stay alive,
+ * C followed by a number - number of cell states (optional, Generations rules).
+ * For example B3/S23 or B2/S/C3. A Generations rule with C states lets
+ * a dying cell go through C - 2 dying states, in which it is not counted as an alive
+ * neighbour and cannot come alive, before it becomes dead.
+ */
+final class RuleParser {
+
+  private static final Pattern TOKEN = Pattern.compile("([BSC])(\\d*)");
+
+  /**
+   * Maximum number of states of a Generations rule.
+   */
+  static final int MAX_STATES = 256;
+
+  private RuleParser() {
+
+  }
+
+  /**
+   * Parses a rule string.
+   *
+   * @throws IllegalArgumentException if the rule string is invalid
+   */
+  static LookupTableRule parse(String ruleString) {
+    Objects.requireNonNull(ruleString);
+    String[] tokens = ruleString.trim().toUpperCase().split("/", -1);
+    if (tokens.length < 2 || tokens.length > 3) {
+      throw invalid(ruleString);
+    }
+    Integer birthMask = null;
+    Integer surviveMask = null;
+    int states = 2;
+    boolean hasStates = false;
+    for (String token : tokens) {
+      Matcher matcher = TOKEN.matcher(token.trim());
+      if (!matcher.matches()) {
+        throw invalid(ruleString);
+      }
+      String digits = matcher.group(2);
+      switch (matcher.group(1)) {
+        case "B":
+          if (birthMask != null) throw invalid(ruleString);
+          birthMask = extractNumbers(digits);
+          break;
+        case "S":
+          if (surviveMask != null) throw invalid(ruleString);
+          surviveMask = extractNumbers(digits);
+          break;
+        default:
+          if (hasStates || digits.isEmpty() || digits.length() > 3) throw invalid(ruleString);
+          hasStates = true;
+          states = Integer.parseInt(digits);
+      }
+    }
+    if (birthMask == null || surviveMask == null) {
+      throw invalid(ruleString);
+    }
+    if ((birthMask & 1) != 0) {
+      throw new IllegalArgumentException("Rules with B0 are not supported [" + ruleString + "].");
+    }
+    if (states < 2 || states > MAX_STATES) {
+      throw new IllegalArgumentException("Number of states must be between 2 and " + MAX_STATES + " [" + ruleString + "].");
+    }
+    return new LookupTableRule(birthMask, surviveMask, states);
+  }
+
+  /**
+   * Extracts all digits from a given text
+   * and returns them as a bitmask, where bit n is set if digit n was found.
+   */
+  private static int extractNumbers(String text) {
+    int numbers = 0;
+    for (int i = 0; i < text.length(); i++) {
+      numbers |= 1 << (text.charAt(i) - '0');
+    }
+    return numbers;
+  }
+
+  private static IllegalArgumentException invalid(String ruleString) {
+    return new IllegalArgumentException("Invalid rule string [" + ruleString + "].");
+  }
+
+}
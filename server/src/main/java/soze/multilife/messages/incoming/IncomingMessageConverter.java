@@ -2,11 +2,13 @@ package soze.multilife.messages.incoming;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Optional;
 
 public class IncomingMessageConverter {
 
   private static final PingMessage PING_MESSAGE = new PingMessage();
+  private static final ResyncMessage RESYNC_MESSAGE = new ResyncMessage();
 
   public static Optional<IncomingMessage> convert(byte[] payload) {
     if (payload.length == 0) {
@@ -19,6 +21,8 @@ public class IncomingMessageConverter {
           return Optional.of(convertClickMessage(payload));
         case 3:
           return Optional.of(convertPingMessage(payload));
+        case 4:
+          return Optional.of(convertResyncMessage(payload));
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -86,4 +90,15 @@ public class IncomingMessageConverter {
     return PING_MESSAGE;
   }
 
+  /**
+   * Resync message optionally contains a range of chunks, as two little endian ints.
+   */
+  private static ResyncMessage convertResyncMessage(byte[] payload) {
+    if (payload.length < 9) {
+      return RESYNC_MESSAGE;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(payload, 1, 8).order(ByteOrder.LITTLE_ENDIAN);
+    return new ResyncMessage(buffer.getInt(), buffer.getInt());
+  }
+
 }
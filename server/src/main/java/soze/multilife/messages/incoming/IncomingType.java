@@ -7,7 +7,8 @@ public enum IncomingType {
 
   LOGIN((byte) 1),
   CLICK((byte) 2),
-  PING((byte) 3);
+  PING((byte) 3),
+  RESYNC((byte) 4);
 
   private final byte typeMarker;
 
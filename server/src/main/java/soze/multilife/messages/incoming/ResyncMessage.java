@@ -0,0 +1,39 @@
+package soze.multilife.messages.incoming;
+
+/**
+ * Sent by a client whose simulation no longer matches the server
+ * (its checksum differs from the one in tick data). The client
+ * receives the state of chunks from fromChunk (inclusive) to toChunk (exclusive),
+ * or the whole state of the game if no range is given.
+ */
+public class ResyncMessage extends IncomingMessage {
+
+  private final int fromChunk;
+  private final int toChunk;
+
+  public ResyncMessage() {
+    this(0, Integer.MAX_VALUE);
+  }
+
+  public ResyncMessage(int fromChunk, int toChunk) {
+    setType(IncomingType.RESYNC);
+    this.fromChunk = fromChunk;
+    this.toChunk = toChunk;
+  }
+
+  public int getFromChunk() {
+    return fromChunk;
+  }
+
+  public int getToChunk() {
+    return toChunk;
+  }
+
+  /**
+   * Returns true if the client requested the whole state of the game.
+   */
+  public boolean isWholeBoard() {
+    return fromChunk <= 0 && toChunk == Integer.MAX_VALUE;
+  }
+
+}
@@ -0,0 +1,27 @@
+package soze.multilife.messages.outgoing;
+
+import java.util.Objects;
+
+/**
+ * State of cells of a part of the grid, from fromIndex (inclusive) to toIndex (exclusive).
+ * Cells are run-length encoded as a sequence of runs, each run is three unsigned
+ * varints: number of dead cells, number of following alive cells and the owner of
+ * these alive cells. Cells after the last run are dead.
+ */
+public class GridSnapshot extends OutgoingMessage {
+
+  public final int fromIndex;
+  public final int toIndex;
+  public final byte[] runs;
+
+  public GridSnapshot(int fromIndex, int toIndex, byte[] runs) {
+    this.setType(OutgoingType.GRID_SNAPSHOT);
+    this.fromIndex = fromIndex;
+    this.toIndex = toIndex;
+    this.runs = Objects.requireNonNull(runs);
+  }
+
+  public void accept(OutgoingMessageVisitor visitor) {
+    visitor.visit(this);
+  }
+}
@@ -0,0 +1,24 @@
+package soze.multilife.messages.outgoing;
+
+/**
+ * Sent to a player who could not be added to any game, with a reason
+ * which is shown to them.
+ */
+public class LoginRefused extends OutgoingMessage {
+
+  private final String reason;
+
+  public LoginRefused(String reason) {
+    setType(OutgoingType.LOGIN_REFUSED);
+    this.reason = reason;
+  }
+
+  public void accept(OutgoingMessageVisitor visitor) {
+    visitor.visit(this);
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+}
@@ -1,5 +1,7 @@
 package soze.multilife.messages.outgoing;
 
+import java.util.Objects;
+
 /**
  * Overall data about one simulation.
  */
@@ -7,11 +9,16 @@ public class MapData extends OutgoingMessage {
 
   public int width;
   public int height;
+  /**
+   * Game of life rule of the simulation, in the B/S notation.
+   */
+  public String rule;
 
-  public MapData(int width, int height) {
+  public MapData(int width, int height, String rule) {
     this.setType(OutgoingType.MAP_DATA);
     this.width = width;
     this.height = height;
+    this.rule = Objects.requireNonNull(rule);
   }
 
   public void accept(OutgoingMessageVisitor visitor) {
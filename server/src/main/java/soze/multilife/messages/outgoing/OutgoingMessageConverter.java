@@ -34,21 +34,39 @@ public class OutgoingMessageConverter {
   }
 
   public static byte[] convertMessage(TickData tickData) {
-    byte[] message = new byte[5];
+    final int messageLength = tickData.hasChecksum ? 9 : 5;
+    byte[] message = new byte[messageLength];
     message[0] = OutgoingType.TICK_DATA.getTypeMarker();
-    ByteBuffer buffer = ByteBuffer.allocate(4);
+    ByteBuffer buffer = ByteBuffer.allocate(messageLength - 1);
     buffer.putInt(tickData.iterations);
+    if (tickData.hasChecksum) {
+      buffer.putInt(tickData.checksum);
+    }
 
     return copy(buffer, message);
   }
 
+  public static byte[] convertMessage(GridSnapshot snapshot) {
+    byte[] message = new byte[9 + snapshot.runs.length];
+    message[0] = OutgoingType.GRID_SNAPSHOT.getTypeMarker();
+    ByteBuffer buffer = ByteBuffer.wrap(message, 1, 8);
+    buffer.putInt(snapshot.fromIndex);
+    buffer.putInt(snapshot.toIndex);
+    System.arraycopy(snapshot.runs, 0, message, 9, snapshot.runs.length);
+    return message;
+  }
+
   public static byte[] convertMessage(MapData mapData) {
-    byte[] message = new byte[9];
+    final int messageLength = 9 + (mapData.rule.length() * 2);
+    byte[] message = new byte[messageLength];
     message[0] = OutgoingType.MAP_DATA.getTypeMarker();
 
-    ByteBuffer buffer = ByteBuffer.allocate(8);
+    ByteBuffer buffer = ByteBuffer.allocate(messageLength - 1);
     buffer.putInt(mapData.width);
     buffer.putInt(mapData.height);
+    for (char c : mapData.rule.toCharArray()) {
+      buffer.putChar(c);
+    }
 
     return copy(buffer, message);
   }
@@ -109,6 +127,19 @@ public class OutgoingMessageConverter {
     return copy(buffer, message);
   }
 
+  public static byte[] convertMessage(LoginRefused loginRefused) {
+    final int messageLength = 1 + (loginRefused.getReason().length() * 2);
+    byte[] message = new byte[messageLength];
+    message[0] = OutgoingType.LOGIN_REFUSED.getTypeMarker();
+
+    ByteBuffer buffer = ByteBuffer.allocate(messageLength - 1);
+    for (char c : loginRefused.getReason().toCharArray()) {
+      buffer.putChar(c);
+    }
+
+    return copy(buffer, message);
+  }
+
   private static byte[] copy(ByteBuffer buffer, byte[] to) {
     return copy(buffer.array(), to, buffer.array().length);
   }
@@ -40,6 +40,14 @@ public class OutgoingMessageConverterVisitor implements OutgoingMessageVisitor {
     this.payload = OutgoingMessageConverter.convertMessage(message);
   }
 
+  public void visit(GridSnapshot message) {
+    this.payload = OutgoingMessageConverter.convertMessage(message);
+  }
+
+  public void visit(LoginRefused message) {
+    this.payload = OutgoingMessageConverter.convertMessage(message);
+  }
+
   public byte[] getPayload() {
     return this.payload;
   }
@@ -20,5 +20,9 @@ public interface OutgoingMessageVisitor {
 
   public void visit(TimeRemainingMessage message);
 
+  public void visit(GridSnapshot message);
+
+  public void visit(LoginRefused message);
+
 
 }
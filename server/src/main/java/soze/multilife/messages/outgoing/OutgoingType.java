@@ -14,7 +14,9 @@ public enum OutgoingType {
   METRICS((byte) 8),
   PLAYER_ADDED((byte) 9),
   PLAYER_REMOVED((byte) 10),
-  PLAYER_POINTS((byte) 11);
+  PLAYER_POINTS((byte) 11),
+  GRID_SNAPSHOT((byte) 12),
+  LOGIN_REFUSED((byte) 13);
 
   private final byte typeMarker;
 
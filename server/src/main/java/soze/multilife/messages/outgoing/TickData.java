@@ -7,11 +7,24 @@ public class TickData extends OutgoingMessage {
 
   public int iterations;
 
+  /**
+   * Checksum of the simulation after this tick, lets clients detect
+   * that their simulation diverged. Only sent if hasChecksum is true.
+   */
+  public int checksum;
+  public boolean hasChecksum;
+
   public TickData(int iterations) {
     setType(OutgoingType.TICK_DATA);
     this.iterations = iterations;
   }
 
+  public TickData(int iterations, int checksum) {
+    this(iterations);
+    this.checksum = checksum;
+    this.hasChecksum = true;
+  }
+
   public void accept(OutgoingMessageVisitor visitor) {
     visitor.visit(this);
   }
@@ -6,10 +6,10 @@ import com.google.common.collect.Multimaps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import soze.multilife.events.EventBus;
-import soze.multilife.game.Cell;
 import soze.multilife.game.Game;
 import soze.multilife.game.GameFactory;
 import soze.multilife.game.Player;
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
 import soze.multilife.game.exceptions.PlayerAlreadyInGameException;
 import soze.multilife.game.exceptions.PlayerNotInGameException;
 import soze.multilife.messages.incoming.IncomingMessage;
@@ -22,7 +22,6 @@ import soze.multilife.server.gamerunner.GameManager;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * A lobby. Connected, but not logged in users are stored here,
@@ -35,9 +34,21 @@ public class Lobby implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(Lobby.class);
 
+  /**
+   * Refused messages of a connection are logged once every this many refusals,
+   * so that a client flooding its game does not flood the log too.
+   */
+  private static final int REFUSED_MESSAGES_LOG_INTERVAL = 1000;
+
+  private static final String LOGIN_REFUSED_SERVER_FULL = "The server is full, try again later.";
+
   private final Map<Integer, Connection> connections = new ConcurrentHashMap<>();
   private final Map<Integer, Integer> playerToGame = new ConcurrentHashMap<>();
   private final Multimap<Integer, Player> gameToPlayers = Multimaps.synchronizedMultimap(ArrayListMultimap.create());
+  /**
+   * Number of messages of every connection refused by games.
+   */
+  private final Map<Integer, Integer> refusedMessages = new ConcurrentHashMap<>();
 
   private final GameManager gameManager;
   private final GameFactory gameFactory;
@@ -90,6 +101,7 @@ public class Lobby implements Runnable {
     Objects.requireNonNull(connection);
     int id = connection.getId();
     connections.remove(id);
+    refusedMessages.remove(id);
     Integer gameId = playerToGame.remove(id);
     if (gameId == null) {
       //player was not in any game, so no further action is neccesary
@@ -117,19 +129,45 @@ public class Lobby implements Runnable {
       return;
     }
 
-    int gameId = playerToGame.get(connectionId);
-    gameManager.acceptMessage(incMessage, connectionId, gameId);
+    Integer gameId = playerToGame.get(connectionId);
+    if (gameId == null) {
+      LOG.debug("Player [{}] is not in any game, ignoring a message of type [{}].", connectionId, incMessage.getType());
+      return;
+    }
+    if (!gameManager.acceptMessage(incMessage, connectionId, gameId)) {
+      onMessageRefused(incMessage, connectionId, gameId);
+    }
+  }
+
+  /**
+   * Messages are refused if a game receives more messages than it handles between ticks,
+   * or if it is not run anymore. Refused messages are lost.
+   */
+  private void onMessageRefused(IncomingMessage incMessage, int connectionId, int gameId) {
+    int refused = refusedMessages.merge(connectionId, 1, Integer::sum);
+    if (refused % REFUSED_MESSAGES_LOG_INTERVAL == 1) {
+      LOG.warn("Game [{}] refused a message of type [{}] from player [{}], messages refused so far [{}].",
+        gameId, incMessage.getType(), connectionId, refused);
+    }
   }
 
   /**
-   * Adds a newly logged player to one of the games.
+   * Adds a newly logged player to one of the games. If there is no free game
+   * and no new game can be created, the login is refused.
    */
   void addPlayer(Player player) {
     LOG.info("Player with name [{}] is trying to login. ", player.getName());
 
     synchronized (addPlayerLock) {
 
-      Game game = gameManager.getFreeGame().orElse(gameFactory.createGame());
+      Game game;
+      try {
+        game = gameManager.getFreeGame().orElseGet(gameFactory::createGame);
+      } catch (OffHeapBudgetExceededException e) {
+        LOG.warn("Could not create a game for player [{}], refusing the login. {}", player.getId(), e.getMessage());
+        player.send(new LoginRefused(LOGIN_REFUSED_SERVER_FULL));
+        return;
+      }
 
       try {
         game.addPlayer(player);
@@ -157,34 +195,9 @@ public class Lobby implements Runnable {
     }
 
     player.send(getPlayerIdentity(player.getId()));
-    player.send(new MapData(game.getWidth(), game.getHeight()));
-    player.send(getAllAliveCellData(game));
+    player.send(new MapData(game.getWidth(), game.getHeight(), game.getRuleString()));
+    player.send(game.getSnapshot());
     player.send(new PlayerAdded(0, "#000000", "AI"));
   }
 
-  /**
-   * Assembles {@link CellList} from all alive cells
-   * of this game.
-   */
-  private CellList getAllAliveCellData(Game game) {
-    List<Cell> cells = game.getAllCells().values().stream()
-      .filter(Cell::isAlive)
-      .collect(Collectors.toList());
-    return constructCellList(cells);
-  }
-
-  /**
-   * Assembles {@link CellList} from a given list of cells.
-   *
-   * @param cells cells
-   * @return CellList
-   */
-  private CellList constructCellList(Collection<Cell> cells) {
-    List<CellList.CellData> cellData = new ArrayList<>();
-    for (Cell cell : cells) {
-      cellData.add(new CellList.CellData(cell));
-    }
-    return new CellList(cellData);
-  }
-
 }
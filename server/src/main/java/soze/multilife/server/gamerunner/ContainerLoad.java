@@ -0,0 +1,82 @@
+package soze.multilife.server.gamerunner;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Cost of running a single {@link GameContainer}, used to place new games in the least loaded
+ * container and to move games away from containers which take too long to tick.
+ * <p>
+ * The cost is the recent time of a tick of the container. Until ticks are measured,
+ * for example right after games were added, the cost is estimated from the number of games,
+ * active cells and players, so that games added at once are not all placed in the same container.
+ */
+final class ContainerLoad {
+
+  /**
+   * Rough costs of a tick in nanoseconds, for estimating the cost of a container.
+   */
+  static final long GAME_COST = 20_000;
+  static final long ACTIVE_CELL_COST = 20;
+  static final long PLAYER_COST = 50_000;
+
+  private final GameContainer container;
+  private final int games;
+  private final long tickTime;
+  private final int activeCells;
+  private final int players;
+  private final Map<Integer, Long> gameTickTimes;
+
+  /**
+   * @param tickTime      recent time of a tick in nanoseconds, 0 if not measured yet
+   * @param gameTickTimes recent times of single games in nanoseconds, by game id, can be updated
+   *                      by the container while this load is used
+   */
+  ContainerLoad(GameContainer container, int games, long tickTime, int activeCells, int players, Map<Integer, Long> gameTickTimes) {
+    this.container = container;
+    this.games = games;
+    this.tickTime = tickTime;
+    this.activeCells = activeCells;
+    this.players = players;
+    this.gameTickTimes = Collections.unmodifiableMap(gameTickTimes);
+  }
+
+  GameContainer getContainer() {
+    return container;
+  }
+
+  int getGames() {
+    return games;
+  }
+
+  long getTickTime() {
+    return tickTime;
+  }
+
+  int getActiveCells() {
+    return activeCells;
+  }
+
+  int getPlayers() {
+    return players;
+  }
+
+  Map<Integer, Long> getGameTickTimes() {
+    return gameTickTimes;
+  }
+
+  /**
+   * Returns the measured or estimated time of a tick in nanoseconds.
+   */
+  long getCost() {
+    long estimate = games * GAME_COST + activeCells * ACTIVE_CELL_COST + players * PLAYER_COST;
+    return Math.max(tickTime, estimate);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("container [%d], games [%d], tick [%.3f] ms, active cells [%d], players [%d]",
+      container.getId(), games, tickTime / 1e6, activeCells, players);
+  }
+
+}
@@ -14,40 +14,150 @@ import soze.multilife.messages.outgoing.TimeRemainingMessage;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a group of games at a fixed tick rate. A container either runs its games in a loop
+ * on its own thread, see {@link #run()}, or is started on shared executors, see
+ * {@link #start(ScheduledExecutorService, Executor)}, so that it takes no thread between ticks.
+ */
 public class GameContainer implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(GameContainer.class);
 
+  private static final int DEFAULT_MESSAGE_BUFFER_SIZE = 256;
+
   private final long id;
 
   private final Map<Integer, Game> games = new ConcurrentHashMap<>();
 
-  private final long tickRate;
+  /**
+   * Starts ticks every tick rate ms.
+   */
+  private final TickScheduler scheduler;
+
+  /**
+   * If true, tick data contains checksums of games, except games with dying cells
+   * which clients cannot simulate.
+   */
+  private final boolean sendChecksums;
+
+  /**
+   * Executors ticks are scheduled and games are run on, shared by all containers.
+   * Null if games are run on the thread of this container.
+   */
+  private ScheduledExecutorService ticker;
+  private Executor tickPool;
+
+  /**
+   * Games of the current tick which are still running on the tick pool.
+   */
+  private final AtomicInteger runningGames = new AtomicInteger();
+  private long tickStartTime;
 
-  private boolean isRunning = true;
+  private volatile boolean isRunning = true;
 
-  private final Queue<MessageQueueNode> queuedMessages = new ConcurrentLinkedQueue<>();
+  /**
+   * Incoming messages of every game, by game id. Moved to another container together with the game.
+   */
+  private final Map<Integer, MessageRing> messageRings = new ConcurrentHashMap<>();
+  private final int messageBufferSize;
+  private final MessageOverflowPolicy messageOverflowPolicy;
+
+  /**
+   * Messages refused or dropped by buffers of games which were removed.
+   */
+  private long droppedMessages;
+
+  /**
+   * Games waiting to be moved to other containers, moved between ticks.
+   */
+  private final Queue<Migration> migrations = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Containers games were moved to, by game id. Messages which still arrive to this container
+   * for moved games are passed on, see {@link #acceptMessage(IncomingMessage, int, int)}.
+   */
+  private final Map<Integer, GameContainer> movedGames = new ConcurrentHashMap<>();
+
+  /**
+   * Recent times of ticks of this container and of its games in nanoseconds, see {@link ContainerLoad}.
+   */
+  private volatile long tickTime;
+  private final Map<Integer, Long> gameTickTimes = new ConcurrentHashMap<>();
+
+  /**
+   * Active cells and players of all games after the last tick.
+   */
+  private volatile int activeCells;
+  private volatile int players;
 
   public GameContainer(long id, long tickRate) {
+    this(id, tickRate, false);
+  }
+
+  public GameContainer(long id, long tickRate, boolean sendChecksums) {
+    this(id, tickRate, sendChecksums, TickOverrunPolicy.SKIP);
+  }
+
+  public GameContainer(long id, long tickRate, boolean sendChecksums, TickOverrunPolicy overrunPolicy) {
+    this(id, tickRate, sendChecksums, overrunPolicy, DEFAULT_MESSAGE_BUFFER_SIZE, MessageOverflowPolicy.BACKPRESSURE);
+  }
+
+  /**
+   * @param messageBufferSize     number of incoming messages buffered for every game between ticks
+   * @param messageOverflowPolicy what happens to messages of a game whose buffer is full
+   */
+  public GameContainer(long id, long tickRate, boolean sendChecksums, TickOverrunPolicy overrunPolicy,
+                       int messageBufferSize, MessageOverflowPolicy messageOverflowPolicy) {
+    if (messageBufferSize <= 0) {
+      throw new IllegalArgumentException("Message buffer size has to be positive.");
+    }
     this.id = id;
-    this.tickRate = tickRate;
+    this.scheduler = new TickScheduler(tickRate, overrunPolicy);
+    this.sendChecksums = sendChecksums;
+    this.messageBufferSize = messageBufferSize;
+    this.messageOverflowPolicy = Objects.requireNonNull(messageOverflowPolicy);
   }
 
   public long getId() {
     return id;
   }
 
+  /**
+   * Adds a game, unless this container has stopped.
+   *
+   * @return true if the game was added
+   */
   public boolean addGame(Game game) {
+    return addGame(game, new MessageRing(messageBufferSize, messageOverflowPolicy));
+  }
+
+  private synchronized boolean addGame(Game game, MessageRing messageRing) {
     if (!isRunning()) {
       return false;
     }
     Objects.requireNonNull(game);
+    // the buffer is added first, so every game in this container has one
+    messageRings.put(game.getId(), messageRing);
     games.put(game.getId(), game);
     return true;
 
   }
 
+  /**
+   * Moves a game to another container before the next tick of this container.
+   * The game stays in this container if the other container stopped.
+   *
+   * @param onMoved called by the thread running ticks of this container after the game was moved
+   */
+  void moveGame(int gameId, GameContainer target, Runnable onMoved) {
+    migrations.add(new Migration(gameId, target, onMoved));
+  }
+
   public int getGamesCount() {
     return games.size();
   }
@@ -60,12 +170,33 @@ public class GameContainer implements Runnable {
     return isRunning;
   }
 
-  public void acceptMessage(IncomingMessage message, int playerId, int gameId) {
-    queuedMessages.add(new MessageQueueNode(message, playerId, gameId));
+  public TickStatistics getTickStatistics() {
+    return scheduler.getStatistics();
+  }
+
+  ContainerLoad getLoad() {
+    return new ContainerLoad(this, games.size(), tickTime, activeCells, players, gameTickTimes);
+  }
+
+  /**
+   * Buffers a message for a game until the next tick.
+   *
+   * @return false if the message was refused because the buffer of the game is full,
+   * or if the game is not in this container
+   */
+  public boolean acceptMessage(IncomingMessage message, int playerId, int gameId) {
+    MessageRing messageRing = messageRings.get(gameId);
+    if (messageRing != null) {
+      return messageRing.offer(message, playerId);
+    }
+    GameContainer target = movedGames.get(gameId);
+    return target != null && target.acceptMessage(message, playerId, gameId);
   }
 
   private void sendRemainingMessages(Game game) {
-    TickData tickData = new TickData(game.getIterations());
+    TickData tickData = sendChecksums && !game.hasDyingCells()
+      ? new TickData(game.getIterations(), game.getChecksum())
+      : new TickData(game.getIterations());
     game.sendMessage(tickData);
     TimeRemainingMessage timeRemainingMessage = new TimeRemainingMessage(game.getRemainingTime());
     game.sendMessage(timeRemainingMessage);
@@ -74,59 +205,198 @@ public class GameContainer implements Runnable {
     playerPoints.forEach((id, points) -> game.sendMessage(new PlayerPoints(id, points)));
   }
 
+  /**
+   * Runs ticks on the calling thread until this container stops, games are run one after another.
+   */
   public void run() {
     while (isRunning) {
 
-      long startTime = 0;
+      try {
+        scheduler.awaitNextTick();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        continue;
+      }
 
-      if (LOG.isTraceEnabled()) {
-        startTime = System.nanoTime();
+      long startTime = System.nanoTime();
+      for (Game game : prepareTick()) {
+        runGame(game);
       }
+      finishTick(System.nanoTime() - startTime);
+    }
+    onStopped();
+  }
 
-      handleMessages();
+  /**
+   * Starts ticks of this container without taking a thread of its own. Every tick is scheduled
+   * on the ticker and every game of the tick is a separate task of the tick pool, so idle threads
+   * of the pool take over games of busy containers. The next tick is scheduled when the last game
+   * of a tick is done.
+   */
+  void start(ScheduledExecutorService ticker, Executor tickPool) {
+    this.ticker = Objects.requireNonNull(ticker);
+    this.tickPool = Objects.requireNonNull(tickPool);
+    scheduleTick();
+  }
 
-      games.values()
-        .stream()
-        .filter(Game::isOutOfTime)
-        .forEach(Game::end);
+  private void scheduleTick() {
+    if (!isRunning) {
+      onStopped();
+      return;
+    }
+    long delay = scheduler.getNextTickDelay();
+    ticker.schedule(() -> tickPool.execute(this::startTick), delay, TimeUnit.NANOSECONDS);
+  }
 
-      games.values().removeIf(game -> game.isScheduledForRemoval() && game.getPlayers().isEmpty());
-      games.values().forEach(this::sendClickedData);
-      games.values().forEach(Game::run);
-      games.values().forEach(this::sendRemainingMessages);
+  private void startTick() {
+    scheduler.startTick();
+    tickStartTime = System.nanoTime();
+    List<Game> tickGames = prepareTick();
+    if (tickGames.isEmpty()) {
+      finishTick(System.nanoTime() - tickStartTime);
+      scheduleTick();
+      return;
+    }
+    runningGames.set(tickGames.size());
+    for (Game game : tickGames) {
+      tickPool.execute(() -> {
+        try {
+          runGame(game);
+        } catch (RuntimeException e) {
+          LOG.error("Could not run game [{}] in container [{}].", game.getId(), id, e);
+        } finally {
+          if (runningGames.decrementAndGet() == 0) {
+            finishTick(System.nanoTime() - tickStartTime);
+            scheduleTick();
+          }
+        }
+      });
+    }
+  }
 
-      if (LOG.isTraceEnabled()) {
-        long totalTime = System.nanoTime() - startTime;
-        LOG.trace("It took [{}] ms to run [{}] games", totalTime / 1e6, games.size());
-      }
+  /**
+   * Moves and removes games before a tick.
+   *
+   * @return games to run in the tick
+   */
+  private List<Game> prepareTick() {
+    moveGames();
 
-      try {
-        Thread.sleep(this.tickRate);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
+    games.values()
+      .stream()
+      .filter(Game::isOutOfTime)
+      .forEach(Game::end);
 
-      if (games.isEmpty()) {
-        stop();
-      }
+    removeFinishedGames();
+    return new ArrayList<>(games.values());
+  }
+
+  private void finishTick(long totalTime) {
+    updateLoad(totalTime);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("It took [{}] ms to run [{}] games with [{}] active cells, {}",
+        totalTime / 1e6, games.size(), activeCells, scheduler.getStatistics());
     }
+
+    stopIfEmpty();
   }
 
-  private void handleMessages() {
-    MessageQueueNode node;
-    while ((node = queuedMessages.poll()) != null) {
-      IncomingMessage message = node.getIncomingMessage();
-      int id = node.getPlayerId();
-      Game game = games.get(node.getGameId());
-      if (game != null) {
-        try {
-          game.acceptMessage(message, id);
-        } catch (PlayerNotInGameException e) {
-          LOG.warn("Trying to pass a message to a player who is not in game. ");
+  private void onStopped() {
+    LOG.debug("Container [{}] stopped, {}, dropped messages [{}]", id, scheduler.getStatistics(), droppedMessages);
+  }
+
+  /**
+   * Games can be added by other threads, a game added while this container
+   * stops would never be run.
+   */
+  private synchronized void stopIfEmpty() {
+    if (games.isEmpty()) {
+      stop();
+    }
+  }
+
+  private void removeFinishedGames() {
+    Iterator<Game> iterator = games.values().iterator();
+    while (iterator.hasNext()) {
+      Game game = iterator.next();
+      if (game.isScheduledForRemoval() && game.getPlayers().isEmpty()) {
+        iterator.remove();
+        gameTickTimes.remove(game.getId());
+        MessageRing messageRing = messageRings.remove(game.getId());
+        if (messageRing != null) {
+          droppedMessages += messageRing.getDroppedCount();
         }
+        game.release();
       }
+    }
+  }
 
+  private void updateLoad(long totalTime) {
+    tickTime = average(tickTime, totalTime);
+    int activeCells = 0;
+    int players = 0;
+    for (Game game : games.values()) {
+      activeCells += game.getActiveCellCount();
+      players += game.getPlayers().size();
     }
+    this.activeCells = activeCells;
+    this.players = players;
+  }
+
+  /**
+   * Exponential moving average of tick times, 0 if nothing was measured yet.
+   */
+  private static long average(long average, long time) {
+    return average == 0 ? time : average + (time - average) / 8;
+  }
+
+  private void moveGames() {
+    Migration migration;
+    while ((migration = migrations.poll()) != null) {
+      int gameId = migration.gameId;
+      Game game = games.get(gameId);
+      if (game == null || !migration.target.addGame(game, messageRings.get(gameId))) {
+        continue;
+      }
+      // messages offered to the buffer while it is being moved are taken by the target
+      movedGames.put(gameId, migration.target);
+      messageRings.remove(gameId);
+      games.remove(gameId);
+      Long gameTickTime = gameTickTimes.remove(gameId);
+      if (gameTickTime != null) {
+        migration.target.gameTickTimes.putIfAbsent(gameId, gameTickTime);
+      }
+      migration.onMoved.run();
+      LOG.debug("Moved game [{}] from container [{}] to container [{}].", gameId, id, migration.target.getId());
+    }
+  }
+
+  /**
+   * Runs a single iteration of a game. Buffered messages are passed to the game first,
+   * clicked cells are sent before and remaining messages after the iteration.
+   */
+  private void runGame(Game game) {
+    long startTime = System.nanoTime();
+    handleMessages(game);
+    sendClickedData(game);
+    game.run();
+    sendRemainingMessages(game);
+    gameTickTimes.merge(game.getId(), System.nanoTime() - startTime, GameContainer::average);
+  }
+
+  /**
+   * Passes buffered messages to a game. A game only takes as many messages
+   * as its buffer holds, so a flood of messages to one game cannot hold up the others.
+   */
+  private void handleMessages(Game game) {
+    MessageRing messageRing = messageRings.get(game.getId());
+    messageRing.drain((message, playerId) -> {
+      try {
+        game.acceptMessage(message, playerId);
+      } catch (PlayerNotInGameException e) {
+        LOG.warn("Trying to pass a message to a player who is not in game. ");
+      }
+    });
   }
 
   private void sendClickedData(Game game) {
@@ -150,4 +420,17 @@ public class GameContainer implements Runnable {
     return new CellList(cellData);
   }
 
+  private static final class Migration {
+
+    private final int gameId;
+    private final GameContainer target;
+    private final Runnable onMoved;
+
+    private Migration(int gameId, GameContainer target, Runnable onMoved) {
+      this.gameId = gameId;
+      this.target = Objects.requireNonNull(target);
+      this.onMoved = Objects.requireNonNull(onMoved);
+    }
+  }
+
 }
@@ -8,8 +8,11 @@ import soze.multilife.messages.incoming.IncomingMessage;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -21,9 +24,30 @@ public class GameManager {
 
   private static final Logger LOG = LoggerFactory.getLogger(GameManager.class);
 
-  private final Executor executor = Executors.newCachedThreadPool(
-    new GameContainerThreadFactory("GameContainer")
-  );
+  /**
+   * Share of the tick rate a container can spend running its games before
+   * games are moved away from it.
+   */
+  static final double HOTSPOT_SHARE = 0.5;
+
+  /**
+   * A game is only moved if the slower of the two containers becomes at least this much faster,
+   * so that games are not moved back and forth.
+   */
+  static final double MIN_IMPROVEMENT = 0.1;
+
+  /**
+   * Runs loops of containers, one virtual thread per container. Null if containers run on the ticker and tick pool.
+   */
+  private final ExecutorService virtualThreads;
+
+  /**
+   * Schedules ticks of all containers, which run their games on the work-stealing tick pool,
+   * so that games of busy containers are spread over all cores and no thread waits between ticks.
+   * Both are null if containers run on virtual threads.
+   */
+  private final ScheduledExecutorService ticker;
+  private final ForkJoinPool tickPool;
 
   /**
    * Game id to game map.
@@ -36,11 +60,72 @@ public class GameManager {
 
   private final int gamesPerThread;
   private final int tickRate;
+  private final boolean sendChecksums;
+  private final TickOverrunPolicy overrunPolicy;
+  private final int messageBufferSize;
+  private final MessageOverflowPolicy messageOverflowPolicy;
+
+  /**
+   * Moves games from containers which take too long to tick, null if games are never moved.
+   */
+  private final ScheduledExecutorService rebalancer;
 
   public GameManager(GameRunnerConfiguration cfg) {
     Objects.requireNonNull(cfg);
-    this.gamesPerThread = cfg.getGamesPerThread();
+    this.virtualThreads = cfg.isVirtualThreadsEnabled() ? newVirtualThreadPerTaskExecutor() : null;
+    if (virtualThreads != null) {
+      // a virtual thread sleeping between ticks costs next to nothing, so every game gets its own loop
+      this.ticker = null;
+      this.tickPool = null;
+      this.gamesPerThread = 1;
+    } else {
+      int tickThreads = cfg.getTickThreads() > 0 ? cfg.getTickThreads() : Runtime.getRuntime().availableProcessors();
+      this.ticker = Executors.newSingleThreadScheduledExecutor(new GameContainerThreadFactory("GameTicker"));
+      this.tickPool = new ForkJoinPool(tickThreads);
+      this.gamesPerThread = cfg.getGamesPerThread();
+    }
     this.tickRate = cfg.getTickRate();
+    this.sendChecksums = cfg.isTickChecksumEnabled();
+    this.overrunPolicy = parseOverrunPolicy(cfg.getTickOverrunPolicy());
+    this.messageBufferSize = cfg.getMessageBufferSize();
+    this.messageOverflowPolicy = parseMessageOverflowPolicy(cfg.getMessageOverflowPolicy());
+    if (cfg.getRebalanceInterval() > 0 && gamesPerThread > 1) {
+      this.rebalancer = Executors.newSingleThreadScheduledExecutor(new GameContainerThreadFactory("GameRebalancer"));
+      this.rebalancer.scheduleWithFixedDelay(
+        this::rebalance, cfg.getRebalanceInterval(), cfg.getRebalanceInterval(), TimeUnit.MILLISECONDS
+      );
+    } else {
+      this.rebalancer = null;
+    }
+  }
+
+  /**
+   * Virtual threads are only available on Java 21 and newer, the server is compiled for older versions.
+   *
+   * @return executor starting a virtual thread for every task, null if virtual threads are not available
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Virtual threads are not available on Java [{}], games run on platform threads.",
+        System.getProperty("java.version"));
+      return null;
+    }
+  }
+
+  private static MessageOverflowPolicy parseMessageOverflowPolicy(String policy) {
+    if (policy == null || policy.trim().isEmpty()) {
+      return MessageOverflowPolicy.BACKPRESSURE;
+    }
+    return MessageOverflowPolicy.valueOf(policy.trim().toUpperCase());
+  }
+
+  private static TickOverrunPolicy parseOverrunPolicy(String policy) {
+    if (policy == null || policy.trim().isEmpty()) {
+      return TickOverrunPolicy.SKIP;
+    }
+    return TickOverrunPolicy.valueOf(policy.trim().toUpperCase());
   }
 
   /**
@@ -56,37 +141,58 @@ public class GameManager {
     }
   }
 
-  public void acceptMessage(IncomingMessage message, int playerId, int gameId) {
+  /**
+   * Passes a message to the container running a game.
+   *
+   * @return false if the message was refused, because the game receives too many messages
+   * or it does not exist
+   */
+  public boolean acceptMessage(IncomingMessage message, int playerId, int gameId) {
     GameContainer container = gamesToContainers.get(gameId);
-    if (container != null) {
-      container.acceptMessage(message, playerId, gameId);
-    }
+    return container != null && container.acceptMessage(message, playerId, gameId);
   }
 
+  /**
+   * Adds a game to the least loaded running container which has room for it,
+   * or to a new container if there is none.
+   */
   private void addToContainer(Game game) {
     LOG.trace("Adding a game [{}]", game);
     synchronized (gameContainers) {
       boolean added = false;
-      for (GameContainer gameContainer : gameContainers) {
-        if (gameContainer.isRunning()) continue;
-        if (gameContainer.getGamesCount() < this.gamesPerThread) {
-          if (gameContainer.addGame(game)) {
-            gamesToContainers.put(game.getId(), gameContainer);
-            added = true;
-            break;
-          }
+      List<ContainerLoad> loads = getLoads();
+      loads.sort(Comparator.comparingLong(ContainerLoad::getCost));
+      for (ContainerLoad load : loads) {
+        GameContainer gameContainer = load.getContainer();
+        if (gameContainer.getGamesCount() < this.gamesPerThread && gameContainer.addGame(game)) {
+          gamesToContainers.put(game.getId(), gameContainer);
+          added = true;
+          break;
         }
       }
       if (!added) {
-        GameContainer gameContainer = new GameContainer(idGenerator.getAndIncrement(), this.tickRate);
+        GameContainer gameContainer = new GameContainer(idGenerator.getAndIncrement(), this.tickRate, this.sendChecksums, this.overrunPolicy,
+          this.messageBufferSize, this.messageOverflowPolicy);
         gameContainers.add(gameContainer);
         gameContainer.addGame(game);
         gamesToContainers.put(game.getId(), gameContainer);
-        executor.execute(gameContainer);
+        if (virtualThreads != null) {
+          virtualThreads.execute(gameContainer);
+        } else {
+          gameContainer.start(ticker, tickPool);
+        }
       }
     }
   }
 
+  /**
+   * Returns the pool games are run on, grids of the parallel engine should be stepped on it too.
+   * Null if games run on virtual threads.
+   */
+  public ForkJoinPool getTickPool() {
+    return tickPool;
+  }
+
   public Optional<Game> getGameById(int id) {
     return Optional.ofNullable(games.get(id));
   }
@@ -104,6 +210,90 @@ public class GameManager {
     return Optional.empty();
   }
 
+  private List<ContainerLoad> getLoads() {
+    synchronized (gameContainers) {
+      List<ContainerLoad> loads = new ArrayList<>(gameContainers.size());
+      for (GameContainer gameContainer : gameContainers) {
+        if (gameContainer.isRunning()) {
+          loads.add(gameContainer.getLoad());
+        }
+      }
+      return loads;
+    }
+  }
+
+  /**
+   * Moves a single game from the most loaded container to the least loaded one,
+   * if the most loaded container spends too much of the tick rate running its games.
+   */
+  void rebalance() {
+    try {
+      List<ContainerLoad> loads = getLoads();
+      if (loads.size() < 2) {
+        return;
+      }
+      ContainerLoad hottest = Collections.max(loads, Comparator.comparingLong(ContainerLoad::getCost));
+      ContainerLoad coolest = null;
+      for (ContainerLoad load : loads) {
+        if (load.getGames() < gamesPerThread && (coolest == null || load.getCost() < coolest.getCost())) {
+          coolest = load;
+        }
+      }
+      if (coolest == null || coolest == hottest
+        || hottest.getCost() < TimeUnit.MILLISECONDS.toNanos(tickRate) * HOTSPOT_SHARE) {
+        return;
+      }
+      int gameId = chooseGameToMove(hottest, coolest);
+      if (gameId == -1) {
+        return;
+      }
+      LOG.debug("Moving game [{}] from {} to {}.", gameId, hottest, coolest);
+      GameContainer target = coolest.getContainer();
+      hottest.getContainer().moveGame(gameId, target, () -> gamesToContainers.put(gameId, target));
+    } catch (RuntimeException e) {
+      // an exception would cancel the scheduled rebalancing
+      LOG.error("Could not rebalance games.", e);
+    }
+  }
+
+  /**
+   * Chooses a game to move from one container to another, so that the slower
+   * of the two containers is as fast as possible.
+   *
+   * @return id of the game to move, -1 if moving any game would not help enough
+   */
+  static int chooseGameToMove(ContainerLoad from, ContainerLoad to) {
+    if (from.getGames() < 2) {
+      return -1;
+    }
+    int bestGameId = -1;
+    long bestCost = (long) (from.getCost() * (1 - MIN_IMPROVEMENT));
+    for (Map.Entry<Integer, Long> entry : from.getGameTickTimes().entrySet()) {
+      long gameTime = entry.getValue();
+      long cost = Math.max(from.getCost() - gameTime, to.getCost() + gameTime);
+      if (cost < bestCost) {
+        bestCost = cost;
+        bestGameId = entry.getKey();
+      }
+    }
+    return bestGameId;
+  }
+
+  /**
+   * Returns tick statistics of all containers which are running.
+   */
+  public List<TickStatistics> getTickStatistics() {
+    synchronized (gameContainers) {
+      List<TickStatistics> statistics = new ArrayList<>(gameContainers.size());
+      for (GameContainer gameContainer : gameContainers) {
+        if (gameContainer.isRunning()) {
+          statistics.add(gameContainer.getTickStatistics());
+        }
+      }
+      return statistics;
+    }
+  }
+
   public void clearEmptyContainers() {
     gameContainers.removeIf(g -> !g.isRunning());
   }
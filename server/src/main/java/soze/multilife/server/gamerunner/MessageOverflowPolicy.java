@@ -0,0 +1,19 @@
+package soze.multilife.server.gamerunner;
+
+/**
+ * What happens to a message for a game whose message buffer is full, see {@link MessageRing}.
+ */
+public enum MessageOverflowPolicy {
+
+  /**
+   * The new message is refused and the sender is told so. Messages already
+   * in the buffer are kept in order.
+   */
+  BACKPRESSURE,
+
+  /**
+   * The oldest message in the buffer is dropped to make room for the new one.
+   */
+  DROP_OLDEST
+
+}
@@ -0,0 +1,165 @@
+package soze.multilife.server.gamerunner;
+
+import soze.multilife.messages.incoming.IncomingMessage;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free buffer of incoming messages of a single game. Messages are offered by
+ * connection threads of any number of players and taken by the container running the game.
+ * <p>
+ * Slots are allocated once, so offering a message does not allocate. Every slot has a sequence
+ * number, telling producers and the consumer whose turn it is to use the slot: a producer claims
+ * the slot at the tail by incrementing the tail, writes the message and then publishes it by
+ * setting the sequence of the slot. The consumer does the same at the head. With
+ * {@link MessageOverflowPolicy#DROP_OLDEST}, a producer which finds the buffer full takes
+ * the oldest message itself, the same way the consumer does.
+ */
+final class MessageRing {
+
+  /**
+   * Receives messages taken from the buffer.
+   */
+  interface MessageHandler {
+    void handle(IncomingMessage message, int playerId);
+  }
+
+  private final int mask;
+  private final MessageOverflowPolicy policy;
+
+  private final IncomingMessage[] messages;
+  private final int[] playerIds;
+  /**
+   * Sequence of every slot. A slot with sequence equal to a tail position is free to be written
+   * at that position, a slot with sequence one more than a head position holds a message to be taken.
+   */
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * @param capacity number of messages the buffer can hold, rounded up to a power of two
+   */
+  MessageRing(int capacity, MessageOverflowPolicy policy) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity of a message buffer has to be between 1 and 2^30.");
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    size = Math.max(size, 1);
+    this.mask = size - 1;
+    this.policy = Objects.requireNonNull(policy);
+    this.messages = new IncomingMessage[size];
+    this.playerIds = new int[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Returns the number of messages which were refused or dropped.
+   */
+  long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Adds a message to the buffer. If the buffer is full, either the message is refused
+   * or the oldest message is dropped, depending on the overflow policy.
+   *
+   * @return false if the message was refused
+   */
+  boolean offer(IncomingMessage message, int playerId) {
+    Objects.requireNonNull(message);
+    while (true) {
+      if (tryOffer(message, playerId)) {
+        return true;
+      }
+      if (policy == MessageOverflowPolicy.BACKPRESSURE) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (poll(null)) {
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean tryOffer(IncomingMessage message, int playerId) {
+    long position = tail.get();
+    while (true) {
+      int slot = (int) position & mask;
+      long difference = sequences.get(slot) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          messages[slot] = message;
+          playerIds[slot] = playerId;
+          sequences.lazySet(slot, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        // the slot still holds a message from the previous lap, the buffer is full
+        return false;
+      } else {
+        // another producer claimed this position
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Takes the oldest message and passes it to a handler.
+   *
+   * @param handler receives the message, null to drop it
+   * @return false if the buffer was empty
+   */
+  private boolean poll(MessageHandler handler) {
+    long position = head.get();
+    while (true) {
+      int slot = (int) position & mask;
+      long difference = sequences.get(slot) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          IncomingMessage message = messages[slot];
+          int playerId = playerIds[slot];
+          messages[slot] = null;
+          sequences.lazySet(slot, position + mask + 1);
+          if (handler != null) {
+            handler.handle(message, playerId);
+          }
+          return true;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  /**
+   * Passes messages in the buffer to a handler, in the order they were offered.
+   * At most as many messages as the capacity are taken, so that messages which keep
+   * arriving cannot hold up the consumer.
+   *
+   * @return number of messages taken
+   */
+  int drain(MessageHandler handler) {
+    Objects.requireNonNull(handler);
+    int count = 0;
+    while (count <= mask && poll(handler)) {
+      count++;
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,22 @@
+package soze.multilife.server.gamerunner;
+
+/**
+ * What a {@link GameContainer} does when a tick takes longer than the tick rate,
+ * so that the next tick cannot start on time.
+ */
+public enum TickOverrunPolicy {
+
+  /**
+   * Ticks which could not start on time are dropped, the next tick starts at
+   * the next multiple of the tick rate. Ticks keep their cadence, but games run slower.
+   */
+  SKIP,
+
+  /**
+   * Ticks which could not start on time are run one after another, without waiting,
+   * until the container is back on schedule. Games keep their speed, but ticks are bunched.
+   * If the container falls too far behind, the oldest ticks are dropped.
+   */
+  CATCH_UP
+
+}
@@ -0,0 +1,130 @@
+package soze.multilife.server.gamerunner;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Starts ticks of a {@link GameContainer} at a fixed rate. Every tick has a deadline,
+ * the scheduled time of its start, and the deadline of the next tick is one period after it,
+ * no matter how long the tick took. Sleeping for the period after every tick would
+ * make the real period the time of the tick plus the period.
+ * <p>
+ * If a tick is still running when the next one should start, the tick overran and
+ * the {@link TickOverrunPolicy} decides whether missed ticks are skipped or caught up.
+ */
+final class TickScheduler {
+
+  /**
+   * Max number of periods a container catches up with {@link TickOverrunPolicy#CATCH_UP},
+   * ticks further behind are skipped.
+   */
+  static final int MAX_CATCH_UP_TICKS = 4;
+
+  interface Sleeper {
+    void sleep(long nanos) throws InterruptedException;
+  }
+
+  private static final long NOT_STARTED = Long.MIN_VALUE;
+
+  private final long period;
+  private final TickOverrunPolicy policy;
+  private final LongSupplier clock;
+  private final Sleeper sleeper;
+
+  /**
+   * Scheduled start of the next tick in nanoseconds, see {@link System#nanoTime()}.
+   */
+  private long deadline = NOT_STARTED;
+
+  private long ticks;
+  private long overruns;
+  private long skippedTicks;
+  private long jitterSum;
+  private double jitterSquareSum;
+  private long maxJitter;
+
+  TickScheduler(long periodMillis, TickOverrunPolicy policy) {
+    this(TimeUnit.MILLISECONDS.toNanos(periodMillis), policy, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+  }
+
+  TickScheduler(long periodNanos, TickOverrunPolicy policy, LongSupplier clock, Sleeper sleeper) {
+    if (periodNanos < 0) {
+      throw new IllegalArgumentException("Tick period cannot be negative.");
+    }
+    this.period = periodNanos;
+    this.policy = Objects.requireNonNull(policy);
+    this.clock = Objects.requireNonNull(clock);
+    this.sleeper = Objects.requireNonNull(sleeper);
+  }
+
+  /**
+   * Waits until the next tick should start. The first tick starts immediately.
+   *
+   * @throws InterruptedException if interrupted while waiting, the tick is not started
+   */
+  void awaitNextTick() throws InterruptedException {
+    long delay = getNextTickDelay();
+    while (delay > 0) {
+      sleeper.sleep(delay);
+      delay = deadline - clock.getAsLong();
+    }
+    startTick();
+  }
+
+  /**
+   * Returns nanoseconds until the next tick should start, without waiting, so that
+   * the tick can be scheduled on an executor. Called once after every tick,
+   * the next tick is then started with {@link #startTick()}.
+   */
+  long getNextTickDelay() {
+    long now = clock.getAsLong();
+    if (deadline == NOT_STARTED) {
+      deadline = now;
+    } else if (now > deadline) {
+      onOverrun(now);
+    }
+    return Math.max(0, deadline - now);
+  }
+
+  /**
+   * Records the start of a tick scheduled with {@link #getNextTickDelay()}.
+   */
+  void startTick() {
+    recordStart(Math.max(0, clock.getAsLong() - deadline));
+    deadline += period;
+  }
+
+  private void onOverrun(long now) {
+    long behind = period == 0 ? 0 : (now - deadline) / period;
+    long skipped;
+    if (policy == TickOverrunPolicy.SKIP) {
+      // the next tick starts at the next deadline which has not passed yet
+      skipped = period == 0 ? 0 : behind + 1;
+    } else {
+      skipped = Math.max(0, behind - MAX_CATCH_UP_TICKS);
+    }
+    deadline += skipped * period;
+    synchronized (this) {
+      overruns++;
+      skippedTicks += skipped;
+    }
+  }
+
+  private synchronized void recordStart(long jitter) {
+    ticks++;
+    jitterSum += jitter;
+    jitterSquareSum += (double) jitter * jitter;
+    maxJitter = Math.max(maxJitter, jitter);
+  }
+
+  synchronized TickStatistics getStatistics() {
+    double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+    double mean = ticks == 0 ? 0 : (double) jitterSum / ticks;
+    double variance = ticks == 0 ? 0 : Math.max(0, jitterSquareSum / ticks - mean * mean);
+    return new TickStatistics(
+      ticks, overruns, skippedTicks, mean / nanosPerMilli, Math.sqrt(variance) / nanosPerMilli, maxJitter / nanosPerMilli
+    );
+  }
+
+}
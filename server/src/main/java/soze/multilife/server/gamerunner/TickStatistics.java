@@ -0,0 +1,73 @@
+package soze.multilife.server.gamerunner;
+
+/**
+ * Timing of ticks of a single {@link GameContainer}. Jitter of a tick is the time
+ * between its scheduled and its actual start.
+ */
+public final class TickStatistics {
+
+  private final long ticks;
+  private final long overruns;
+  private final long skippedTicks;
+  private final double meanJitter;
+  private final double jitterDeviation;
+  private final double maxJitter;
+
+  TickStatistics(long ticks, long overruns, long skippedTicks, double meanJitter, double jitterDeviation, double maxJitter) {
+    this.ticks = ticks;
+    this.overruns = overruns;
+    this.skippedTicks = skippedTicks;
+    this.meanJitter = meanJitter;
+    this.jitterDeviation = jitterDeviation;
+    this.maxJitter = maxJitter;
+  }
+
+  /**
+   * Returns the number of ticks run.
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Returns the number of ticks which did not finish before the next tick was scheduled.
+   */
+  public long getOverruns() {
+    return overruns;
+  }
+
+  /**
+   * Returns the number of scheduled ticks which were dropped.
+   */
+  public long getSkippedTicks() {
+    return skippedTicks;
+  }
+
+  /**
+   * Returns mean jitter in ms.
+   */
+  public double getMeanJitter() {
+    return meanJitter;
+  }
+
+  /**
+   * Returns standard deviation of jitter in ms.
+   */
+  public double getJitterDeviation() {
+    return jitterDeviation;
+  }
+
+  /**
+   * Returns max jitter in ms.
+   */
+  public double getMaxJitter() {
+    return maxJitter;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ticks [%d], overruns [%d], skipped [%d], jitter mean [%.3f] ms, deviation [%.3f] ms, max [%.3f] ms",
+      ticks, overruns, skippedTicks, meanJitter, jitterDeviation, maxJitter);
+  }
+
+}
@@ -1,14 +1,23 @@
 package soze.multilife.game;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import soze.multilife.game.exceptions.PlayerNotInGameException;
+import soze.multilife.game.rule.RuleFactory;
 import soze.multilife.messages.incoming.ClickMessage;
+import soze.multilife.messages.incoming.ResyncMessage;
+import soze.multilife.messages.outgoing.GridSnapshot;
+import soze.multilife.messages.outgoing.MapData;
 import soze.multilife.messages.outgoing.OutgoingMessage;
 import soze.multilife.messages.outgoing.PlayerRemoved;
 
 import java.awt.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
 
@@ -16,11 +25,17 @@ import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 public class BaseGameTest extends GameTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	@Before
 	public void setUp() {
 
@@ -133,6 +148,59 @@ public class BaseGameTest extends GameTest {
 		assertTrue(clickedCells.contains(new Cell(4, 0)));
 	}
 
+	@Test
+	public void testResyncsAreRateLimited() throws Exception {
+		BaseGame game = builder()
+			.withMaxPlayers(2)
+			.build();
+
+		Player player1 = createPlayerMock(1);
+		Player player2 = createPlayerMock(2);
+		game.addPlayer(player1);
+		game.addPlayer(player2);
+
+		game.acceptMessage(new ResyncMessage(), player1.getId());
+		game.run();
+		game.acceptMessage(new ResyncMessage(), player1.getId());
+		game.acceptMessage(new ResyncMessage(), player2.getId());
+		verify(player1, times(1)).send(isA(GridSnapshot.class));
+		verify(player2, times(1)).send(isA(GridSnapshot.class));
+
+		for (int i = 1; i < BaseGame.MIN_RESYNC_INTERVAL; i++) {
+			game.run();
+		}
+		game.acceptMessage(new ResyncMessage(), player1.getId());
+		verify(player1, times(2)).send(isA(GridSnapshot.class));
+	}
+
+	@Test
+	public void testPartialResyncSendsRequestedChunks() throws Exception {
+		BaseGame game = builder()
+			.withWidth(100)
+			.withHeight(100)
+			.build();
+
+		Player player = createPlayerMock(1);
+		game.addPlayer(player);
+
+		game.acceptMessage(new ResyncMessage(2, 4), player.getId());
+		verify(player, times(1)).send(isA(GridSnapshot.class));
+		verify(player, never()).send(isA(MapData.class));
+		ArgumentCaptor<OutgoingMessage> messages = ArgumentCaptor.forClass(OutgoingMessage.class);
+		verify(player, atLeastOnce()).send(messages.capture());
+		GridSnapshot snapshot = (GridSnapshot) messages.getAllValues().stream()
+			.filter(message -> message instanceof GridSnapshot)
+			.findFirst()
+			.orElseThrow(AssertionError::new);
+		assertEquals(2 * Grid.CHUNK_SIZE, snapshot.fromIndex);
+		assertEquals(4 * Grid.CHUNK_SIZE, snapshot.toIndex);
+
+		// the range is clamped to the board
+		GridSnapshot end = game.getSnapshot(9, Integer.MAX_VALUE);
+		assertEquals(9 * Grid.CHUNK_SIZE, end.fromIndex);
+		assertEquals(100 * 100, end.toIndex);
+	}
+
 	@Test(expected = PlayerNotInGameException.class)
 	public void testAcceptMessagePlayerNotInGame() throws Exception {
 		BaseGame game = builder()
@@ -193,6 +261,98 @@ public class BaseGameTest extends GameTest {
 		assertEquals(clickedCells.size(), 5);
 	}
 
+	@Test
+	public void testClickedCellsAreAppliedOnRun() throws Exception {
+		BaseGame game = builder()
+				.withMaxPlayers(2)
+				.withInitialDensity(0f)
+				.build();
+
+		Player player1 = createPlayerMock(1);
+		game.addPlayer(player1);
+		Player player2 = createPlayerMock(2);
+		game.addPlayer(player2);
+
+		ClickMessage message = new ClickMessage();
+		message.setIndices(new int[]{0, 0, 1});
+		game.acceptMessage(message, player1.getId());
+
+		ClickMessage conflictingMessage = new ClickMessage();
+		conflictingMessage.setIndices(new int[]{1, 5});
+		game.acceptMessage(conflictingMessage, player2.getId());
+
+		assertEquals(game.getClickedCells().size(), 2);
+
+		game.run();
+
+		assertTrue(game.getClickedCells().isEmpty());
+		Map<Point, Cell> cells = game.getAllCells();
+		assertTrue(cells.get(new Point(0, 0)).isAlive());
+		assertEquals(cells.get(new Point(1, 0)).getOwnerId(), 1);
+		assertFalse(cells.get(new Point(5, 0)).isAlive());
+
+		// the second player can click again in the next iteration
+		game.acceptMessage(conflictingMessage, player2.getId());
+		assertTrue(game.getClickedCells().isEmpty());
+		ClickMessage freeMessage = new ClickMessage();
+		freeMessage.setIndices(new int[]{5});
+		game.acceptMessage(freeMessage, player2.getId());
+		assertEquals(game.getClickedCells().size(), 1);
+	}
+
+	@Test
+	public void testGameIsRestoredFromFile() throws Exception {
+		BaseGame game = builder()
+				.withMaxPlayers(2)
+				.withInitialDensity(0.3f)
+				.withDuration(60000)
+				.build();
+		Path path = temporaryFolder.getRoot().toPath().resolve("game-1.mlg");
+		game.saveTo(GameFile.create(path, game.getId(), game.getWidth(), game.getHeight(),
+				game.getMaxPlayers(), 60000, game.getRuleString(), false));
+
+		Player player1 = createPlayerMock(1);
+		game.addPlayer(player1);
+		for (int i = 0; i < 10; i++) {
+			ClickMessage message = new ClickMessage();
+			message.setIndices(new int[]{i * 50 + 20, i * 50 + 21, i * 50 + 22});
+			game.acceptMessage(message, player1.getId());
+			game.run();
+		}
+
+		BaseGame restored = BaseGame.restore(GameFile.open(path), GridEngine.SCALAR, null, null);
+		assertEquals(game.getId(), restored.getId());
+		assertEquals(game.getIterations(), restored.getIterations());
+		assertEquals(game.getPlayerPoints(), restored.getPlayerPoints());
+		assertEquals(game.getChecksum(), restored.getChecksum());
+		Map<Point, Cell> expected = game.getAllCells();
+		Map<Point, Cell> actual = restored.getAllCells();
+		for (Point point : expected.keySet()) {
+			assertEquals(expected.get(point).isAlive(), actual.get(point).isAlive());
+			assertEquals(expected.get(point).getOwnerId(), actual.get(point).getOwnerId());
+		}
+
+		// the game can still run until it is removed from its container
+		game.end();
+		assertTrue(Files.exists(path));
+		game.release();
+		assertFalse(Files.exists(path));
+	}
+
+	@Test
+	public void testOffHeapMemoryIsReleasedAfterEnd() throws Exception {
+		OffHeapBudget budget = new OffHeapBudget(Grid.getOffHeapBytes(50 * 50));
+		BaseGame game = new BaseGame(1, InitialPattern.random(50, 50, 0.3f, 1), 50, 50, 2, 60000,
+				RuleFactory.getRule("BASIC"), GridEngine.SCALAR, budget, null);
+
+		// the game stays in its container until its players leave
+		game.end();
+		assertEquals(budget.getLimit(), budget.getReserved());
+
+		game.release();
+		assertEquals(0, budget.getReserved());
+	}
+
 	@Test
 	public void testProperInitialization() throws Exception {
 		int width = 25;
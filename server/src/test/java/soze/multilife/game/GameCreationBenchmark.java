@@ -0,0 +1,54 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.RuleFactory;
+
+import java.security.SecureRandom;
+
+/**
+ * Measures the average time of creating a game, seeding its grid with random cells.
+ * Compares seeding cell by cell with {@link Grid#changeState(int, int, boolean, int)} with
+ * {@link Grid#seed(InitialPattern, int)}. Not run with tests, run it with
+ * java -cp target/classes:target/test-classes soze.multilife.game.GameCreationBenchmark [width] [height] [density]
+ */
+public class GameCreationBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int ITERATIONS = 20;
+
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		float density = args.length > 2 ? Float.parseFloat(args[2]) : 0.3f;
+
+		measure("cell by cell", () -> {
+			Grid grid = new Grid(width, height, RuleFactory.getRule("BASIC"));
+			SecureRandom random = new SecureRandom();
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					if (random.nextFloat() < density) {
+						grid.changeState(x, y, true, 0);
+					}
+				}
+			}
+			grid.updateGrid();
+		}, width, height);
+		measure("seeded", () -> {
+			Grid grid = new Grid(width, height, RuleFactory.getRule("BASIC"));
+			grid.seed(InitialPattern.random(width, height, density), 0);
+			grid.updateGrid();
+		}, width, height);
+	}
+
+	private static void measure(String name, Runnable creation, int width, int height) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			creation.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			creation.run();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+		System.out.printf("%s %dx%d: %.3f ms per game%n", name, width, height, elapsed);
+	}
+
+}
@@ -0,0 +1,73 @@
+package soze.multilife.game;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soze.multilife.configuration.interfaces.GameConfiguration;
+import soze.multilife.configuration.interfaces.GameRunnerConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GameFactoryTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private GameFactory getFactory(long offHeapBudget) {
+		GameConfiguration config = mock(GameConfiguration.class);
+		when(config.getGridWidth()).thenReturn(30);
+		when(config.getGridHeight()).thenReturn(30);
+		when(config.getMaxPlayers()).thenReturn(2);
+		when(config.getGameDuration()).thenReturn(60000L);
+		when(config.getInitialDensity()).thenReturn(0.3f);
+		GameRunnerConfiguration runnerConfig = mock(GameRunnerConfiguration.class);
+		when(runnerConfig.getGameStateDirectory()).thenReturn(temporaryFolder.getRoot().toString());
+		when(runnerConfig.getOffHeapBudget()).thenReturn(offHeapBudget);
+		return new GameFactory(config, runnerConfig);
+	}
+
+	@Test
+	public void testSavedGameIsRestored() throws Exception {
+		Game game = getFactory(0).createGame();
+
+		List<Game> restored = getFactory(0).restoreGames();
+
+		assertEquals(1, restored.size());
+		assertEquals(game.getId(), restored.get(0).getId());
+		assertEquals(game.getChecksum(), restored.get(0).getChecksum());
+	}
+
+	@Test
+	public void testCorruptFileIsRenamed() throws Exception {
+		Path path = temporaryFolder.getRoot().toPath().resolve("game-5.mlg");
+		Files.write(path, new byte[200]);
+
+		List<Game> restored = getFactory(0).restoreGames();
+
+		assertTrue(restored.isEmpty());
+		assertFalse(Files.exists(path));
+		assertTrue(Files.exists(path.resolveSibling("game-5.mlg" + GameFile.CORRUPT_SUFFIX)));
+	}
+
+	@Test
+	public void testFileIsKeptIfGameCannotBeRestored() throws Exception {
+		Game game = getFactory(0).createGame();
+		Path path = temporaryFolder.getRoot().toPath().resolve("game-" + game.getId() + ".mlg");
+
+		// there is not enough off-heap memory left for the game
+		List<Game> restored = getFactory(Grid.getOffHeapBytes(30 * 30) - 1).restoreGames();
+
+		assertTrue(restored.isEmpty());
+		assertTrue(Files.exists(path));
+		assertEquals(1, getFactory(0).restoreGames().size());
+	}
+
+}
@@ -0,0 +1,54 @@
+package soze.multilife.game;
+
+import soze.multilife.game.rule.RuleFactory;
+
+import java.util.Random;
+
+/**
+ * Measures the average time of a single grid update. Not run with tests, run it with
+ * java -cp target/classes:target/test-classes soze.multilife.game.GridBenchmark [engine] [width] [height] [density]
+ */
+public class GridBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 200;
+	private static final int ITERATIONS = 1000;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		GridEngine engine = args.length > 0 ? GridEngine.valueOf(args[0]) : GridEngine.SCALAR;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int height = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+		float density = args.length > 3 ? Float.parseFloat(args[3]) : 0.3f;
+
+		double best = Double.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			Grid grid = createGrid(engine, width, height, density);
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				grid.updateGrid();
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				grid.updateGrid();
+			}
+			double elapsed = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+			best = Math.min(best, elapsed);
+			System.out.printf("%s %dx%d density %.2f: %.3f ms per update%n", engine, width, height, density, elapsed);
+		}
+		System.out.printf("best: %.3f ms per update%n", best);
+	}
+
+	private static Grid createGrid(GridEngine engine, int width, int height, float density) {
+		Grid grid = new Grid(width, height, RuleFactory.getRule("BASIC"), engine);
+		Random random = new Random(42);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (random.nextFloat() < density) {
+					grid.changeState(x, y, true, 1 + random.nextInt(4));
+				}
+			}
+		}
+		grid.updateGrid();
+		return grid;
+	}
+
+}
@@ -0,0 +1,147 @@
+package soze.multilife.game;
+
+import org.junit.Test;
+import soze.multilife.game.rule.RuleFactory;
+import soze.multilife.game.rule.RuleType;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that every engine gives the same results as the scalar engine.
+ */
+public class GridEngineTest {
+
+	private static final int ITERATIONS = 40;
+
+	/**
+	 * Records points awarded by a grid. Clicks reach the grid through a {@link ClickBuffer},
+	 * like in {@link BaseGame}.
+	 */
+	private static class RecordingGrid {
+
+		private final Grid grid;
+		private final ClickBuffer clicks;
+		private final List<String> events = new ArrayList<>();
+
+		RecordingGrid(Grid grid) {
+			this.grid = grid;
+			this.clicks = new ClickBuffer(grid.getSize());
+			grid.onCellDeath(id -> events.add("death " + id));
+			grid.onCellBirth(id -> events.add("birth " + id));
+		}
+	}
+
+	private void assertSameGrids(String message, RecordingGrid expected, RecordingGrid actual) {
+		Map<Point, Cell> expectedCells = expected.grid.getAllCells();
+		Map<Point, Cell> actualCells = actual.grid.getAllCells();
+		for (Map.Entry<Point, Cell> entry : expectedCells.entrySet()) {
+			Cell cell = actualCells.get(entry.getKey());
+			assertEquals(message + " " + entry.getKey(), entry.getValue().isAlive(), cell.isAlive());
+			assertEquals(message + " " + entry.getKey(), entry.getValue().getOwnerId(), cell.getOwnerId());
+		}
+		assertEquals(message, expected.events, actual.events);
+	}
+
+	private void crossCheck(GridEngine engine, String rule, int width, int height, float density, long seed) {
+		String message = engine + " " + rule + " " + width + "x" + height + " seed " + seed;
+		RecordingGrid expected = new RecordingGrid(new Grid(width, height, RuleFactory.getRule(rule), GridEngine.SCALAR));
+		RecordingGrid actual = new RecordingGrid(new Grid(width, height, RuleFactory.getRule(rule), engine));
+		Random random = new Random(seed);
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < height; j++) {
+				if (random.nextFloat() < density) {
+					int ownerId = random.nextInt(4);
+					expected.grid.changeState(i, j, true, ownerId);
+					actual.grid.changeState(i, j, true, ownerId);
+				}
+			}
+		}
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			if (iteration % 10 == 5) {
+				// several players click, indices may wrap around the grid and clicks may conflict
+				int size = width * height;
+				for (int click = 0; click < 4; click++) {
+					int[] indices = new int[]{random.nextInt(size * 3) - size, random.nextInt(size), random.nextInt(size)};
+					int ownerId = 1 + random.nextInt(3);
+					boolean claimed = expected.clicks.claim(expected.grid, indices, ownerId);
+					assertEquals(message + " iteration " + iteration, claimed, actual.clicks.claim(actual.grid, indices, ownerId));
+				}
+			}
+			if (iteration == ITERATIONS / 2) {
+				expected.grid.killAll(1);
+				actual.grid.killAll(1);
+			}
+			expected.clicks.apply(expected.grid);
+			actual.clicks.apply(actual.grid);
+			expected.grid.updateGrid();
+			actual.grid.updateGrid();
+			assertSameGrids(message + " iteration " + iteration, expected, actual);
+		}
+	}
+
+	private void crossCheck(GridEngine engine) {
+		long seed = 1;
+		for (RuleType type : RuleType.values()) {
+			crossCheck(engine, type.name(), 40, 30, 0.3f, seed++);
+			crossCheck(engine, type.name(), 64, 64, 0.5f, seed++);
+			crossCheck(engine, type.name(), 7, 5, 0.4f, seed++);
+			crossCheck(engine, type.name(), 3, 3, 0.5f, seed++);
+		}
+		crossCheck(engine, "B2/S/C3", 40, 30, 0.3f, seed++);
+		crossCheck(engine, "B3/S23/C5", 33, 17, 0.4f, seed);
+	}
+
+	@Test
+	public void testBitboardEngine() throws Exception {
+		crossCheck(GridEngine.BITBOARD);
+	}
+
+	@Test
+	public void testHashlifeEngine() throws Exception {
+		crossCheck(GridEngine.HASHLIFE);
+	}
+
+	@Test
+	public void testParallelEngine() throws Exception {
+		crossCheck(GridEngine.PARALLEL);
+		// big enough to be split into many bands
+		crossCheck(GridEngine.PARALLEL, "BASIC", 300, 200, 0.3f, 1);
+		crossCheck(GridEngine.PARALLEL, "B3/S23/C5", 257, 311, 0.4f, 2);
+	}
+
+	@Test
+	public void testVectorEngine() throws Exception {
+		crossCheck(GridEngine.VECTOR);
+		// many chunks, rows of a chunk wrap around the grid
+		crossCheck(GridEngine.VECTOR, "BASIC", 300, 200, 0.3f, 1);
+		crossCheck(GridEngine.VECTOR, "B3/S23/C5", 257, 311, 0.4f, 2);
+	}
+
+	@Test
+	public void testNeighbourSumsMatchScalarSums() throws Exception {
+		Random random = new Random(3);
+		int length = 1000;
+		byte[] above = new byte[length + 2];
+		byte[] middle = new byte[length + 2];
+		byte[] below = new byte[length + 2];
+		for (int i = 0; i < length + 2; i++) {
+			above[i] = (byte) random.nextInt(2);
+			middle[i] = (byte) random.nextInt(2);
+			below[i] = (byte) random.nextInt(2);
+		}
+		byte[] expected = new byte[length];
+		byte[] actual = new byte[length];
+		new ScalarNeighbourSums().sum(above, middle, below, expected, length);
+		NeighbourSums sums = NeighbourSums.create();
+		sums.sum(above, middle, below, actual, length);
+		assertArrayEquals(sums.getClass().getSimpleName(), expected, actual);
+	}
+
+}
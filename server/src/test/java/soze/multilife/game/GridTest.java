@@ -1,13 +1,18 @@
 package soze.multilife.game;
 
+import org.junit.Assume;
 import org.junit.Test;
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
 import soze.multilife.game.rule.RuleFactory;
 
 import java.awt.*;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -132,4 +137,491 @@ public class GridTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testGridUpdateWrapsAroundEdges() throws Exception {
+		Grid grid = getGrid(10, 10);
+		grid.changeState(0, 0, true, 1);
+		grid.changeState(0, 1, true, 1);
+		grid.changeState(0, 9, true, 1);
+		grid.updateGrid();
+		grid.updateGrid();
+		Map<Point, Cell> cells = grid.getAllCells();
+		assertTrue(cells.get(new Point(0, 0)).isAlive());
+		assertTrue(cells.get(new Point(1, 0)).isAlive());
+		assertTrue(cells.get(new Point(9, 9)).isAlive());
+		assertFalse(cells.get(new Point(0, 1)).isAlive());
+		assertFalse(cells.get(new Point(0, 9)).isAlive());
+	}
+
+	@Test
+	public void testLargeGrid() throws Exception {
+		Grid grid = getGrid(1000, 1000);
+		grid.changeState(500, 500, true, 1);
+		grid.changeState(500, 501, true, 1);
+		grid.changeState(500, 502, true, 1);
+		grid.updateGrid();
+		grid.updateGrid();
+		Map<Point, Cell> cells = grid.getAllCells();
+		assertEquals(cells.size(), 1000 * 1000);
+		assertTrue(cells.get(new Point(499, 501)).isAlive());
+		assertTrue(cells.get(new Point(501, 501)).isAlive());
+		assertEquals(cells.get(new Point(501, 501)).getOwnerId(), 1);
+	}
+
+	@Test
+	public void testLargeSparseGrid() throws Exception {
+		Grid grid = getGrid(10000, 10000);
+		grid.changeState(10, 10, true, 1);
+		grid.changeState(10, 11, true, 1);
+		grid.changeState(10, 12, true, 1);
+		grid.changeState(9000, 7000, true, 2);
+		grid.changeState(9001, 7000, true, 2);
+		grid.changeState(9002, 7000, true, 2);
+		grid.updateGrid();
+		for (int i = 0; i < 5; i++) {
+			grid.updateGrid();
+		}
+		assertTrue(grid.getCell(9, 11).isAlive());
+		assertTrue(grid.getCell(11, 11).isAlive());
+		assertFalse(grid.getCell(10, 10).isAlive());
+		assertTrue(grid.getCell(9001, 6999).isAlive());
+		assertTrue(grid.getCell(9001, 7001).isAlive());
+		assertFalse(grid.getCell(9000, 7000).isAlive());
+		assertEquals(grid.getCell(9001, 7001).getOwnerId(), 2);
+		assertEquals(grid.getCell(5000, 5000).getOwnerId(), 0);
+	}
+
+	@Test
+	public void testOnlyFlippedCellsActivateNeighbours() throws Exception {
+		Grid grid = new Grid(50, 50, RuleFactory.getRule("B3/S23/C8"));
+		// a block is a still life, a lonely cell starts dying
+		grid.changeState(10, 10, true, 1);
+		grid.changeState(11, 10, true, 1);
+		grid.changeState(10, 11, true, 1);
+		grid.changeState(11, 11, true, 1);
+		grid.changeState(30, 30, true, 2);
+		grid.transferCells();
+		grid.updateGrid();
+		assertTrue(grid.isDying(30 + 30 * 50));
+		grid.updateGrid();
+		// only the dying cell is left to check
+		for (int i = 0; i < 5; i++) {
+			assertEquals(1, grid.getActiveCellCount());
+			grid.updateGrid();
+		}
+		assertFalse(grid.isDying(30 + 30 * 50));
+		grid.updateGrid();
+		assertEquals(0, grid.getActiveCellCount());
+		// changing the owner of an alive cell does not wake up its neighbours
+		grid.changeState(10, 10, true, 2);
+		grid.transferCells();
+		assertEquals(1, grid.getActiveCellCount());
+		assertEquals(2, grid.getCell(10, 10).getOwnerId());
+		assertEquals(4, grid.getPopulation());
+	}
+
+	@Test
+	public void testCycleIsReplayed() throws Exception {
+		Grid grid = getGrid(20, 20);
+		int[] births = {0};
+		int[] deaths = {0};
+		grid.onCellBirth(id -> births[0]++);
+		grid.onCellDeath(id -> deaths[0]++);
+		// a blinker and a block
+		grid.changeState(3, 2, true, 1);
+		grid.changeState(3, 3, true, 1);
+		grid.changeState(3, 4, true, 1);
+		grid.changeState(10, 10, true, 2);
+		grid.changeState(11, 10, true, 2);
+		grid.changeState(10, 11, true, 2);
+		grid.changeState(11, 11, true, 2);
+		grid.transferCells();
+		for (int i = 0; i < 6; i++) {
+			grid.updateGrid();
+		}
+		assertEquals(2, grid.getCyclePeriod());
+		for (int i = 0; i < 5; i++) {
+			grid.updateGrid();
+		}
+		// replayed generations keep changing cells and awarding points
+		assertEquals(22, births[0]);
+		assertEquals(22, deaths[0]);
+		assertTrue(grid.getCell(2, 3).isAlive());
+		assertTrue(grid.getCell(4, 3).isAlive());
+		assertFalse(grid.getCell(3, 2).isAlive());
+		assertEquals(7, grid.getPopulation());
+		// a click ends the cycle, the next generation is computed
+		grid.changeState(15, 15, true, 1);
+		grid.updateGrid();
+		assertEquals(0, grid.getCyclePeriod());
+		assertTrue(grid.getCell(15, 15).isAlive());
+		assertTrue(grid.getCell(3, 2).isAlive());
+		grid.updateGrid();
+		assertFalse(grid.getCell(15, 15).isAlive());
+		assertEquals(7, grid.getPopulation());
+	}
+
+	@Test
+	public void testCycleIsNotReplayedOnChecksumCollision() throws Exception {
+		ChunkedIntArray owners = new HeapChunkedIntArray(128, 4);
+		long[] start = {1L, 0L};
+		long[] other = {2L, 0L};
+
+		// the same checksum and population, but other alive cells
+		assertFalse(runCycle(new CycleDetector(), owners, start, other));
+		// the same alive cells, but another owner
+		CycleDetector detector = new CycleDetector();
+		detector.generationComputed(7, 1, start, owners);
+		detector.generationComputed(7, 1, start, owners);
+		owners.set(0, 1);
+		detector.generationComputed(7, 1, start, owners);
+		assertFalse(detector.isReplaying());
+		// the same state
+		assertTrue(runCycle(new CycleDetector(), owners, start, start));
+	}
+
+	/**
+	 * Runs a cycle of period 1 which starts in one state and ends in another one
+	 * with the same checksum, returns true if the detector replays it.
+	 */
+	private boolean runCycle(CycleDetector detector, ChunkedIntArray owners, long[] start, long[] end) {
+		detector.generationComputed(7, 1, start, owners);
+		detector.generationComputed(7, 1, start, owners);
+		assertTrue(detector.isRecording());
+		detector.generationComputed(7, 1, end, owners);
+		return detector.isReplaying();
+	}
+
+	@Test
+	public void testOffHeapOwners() throws Exception {
+		OffHeapBudget budget = new OffHeapBudget(Grid.getOffHeapBytes(100 * 100));
+		Grid heapGrid = new Grid(100, 100, RuleFactory.getRule("BASIC"), GridEngine.SCALAR);
+		Grid offHeapGrid = new Grid(100, 100, RuleFactory.getRule("BASIC"), GridEngine.SCALAR, budget);
+		assertEquals(budget.getLimit(), budget.getReserved());
+		Random random = new Random(3);
+		for (int i = 0; i < 3000; i++) {
+			int x = random.nextInt(100);
+			int y = random.nextInt(100);
+			int ownerId = 1 + random.nextInt(4);
+			heapGrid.changeState(x, y, true, ownerId);
+			offHeapGrid.changeState(x, y, true, ownerId);
+		}
+		for (int i = 0; i < 50; i++) {
+			heapGrid.updateGrid();
+			offHeapGrid.updateGrid();
+			if (i == 20) {
+				heapGrid.killAll(2);
+				offHeapGrid.killAll(2);
+			}
+		}
+		Map<Point, Cell> expected = heapGrid.getAllCells();
+		Map<Point, Cell> actual = offHeapGrid.getAllCells();
+		for (Point point : expected.keySet()) {
+			assertEquals(expected.get(point).isAlive(), actual.get(point).isAlive());
+			assertEquals(expected.get(point).getOwnerId(), actual.get(point).getOwnerId());
+		}
+		offHeapGrid.release();
+		offHeapGrid.release();
+		assertEquals(0, budget.getReserved());
+	}
+
+	@Test(expected = OffHeapBudgetExceededException.class)
+	public void testOffHeapBudgetExceeded() throws Exception {
+		OffHeapBudget budget = new OffHeapBudget(Grid.getOffHeapBytes(100 * 100));
+		new Grid(100, 100, RuleFactory.getRule("BASIC"), GridEngine.SCALAR, budget);
+		new Grid(10, 10, RuleFactory.getRule("BASIC"), GridEngine.SCALAR, budget);
+	}
+
+	@Test
+	public void testSnapshotEncodesAliveCells() throws Exception {
+		Grid grid = getGrid(2000, 1000);
+		Random random = new Random(7);
+		for (int i = 0; i < 5000; i++) {
+			grid.changeState(random.nextInt(300), random.nextInt(1000), true, 1 + random.nextInt(3));
+		}
+		grid.changeState(1999, 999, true, 300);
+		grid.updateGrid();
+		grid.updateGrid();
+		int size = grid.getSize();
+		int[] ranges = {0, size, 0, 0, 1500, 7 * Grid.CHUNK_SIZE, 3 * Grid.CHUNK_SIZE, size};
+		for (int i = 0; i < ranges.length; i += 2) {
+			int from = ranges[i];
+			int to = ranges[i + 1];
+			int[] owners = decodeSnapshot(grid.encodeSnapshot(from, to), from, to);
+			for (int index = from; index < to; index++) {
+				Cell cell = grid.getCell(index % 2000, index / 2000);
+				assertEquals(cell.isAlive() ? cell.getOwnerId() : -1, owners[index - from]);
+			}
+		}
+		// a run of cells with the same owner takes three bytes
+		Grid empty = getGrid(2000, 1000);
+		for (int x = 0; x < 100; x++) {
+			empty.changeState(x, 0, true, 1);
+		}
+		empty.transferCells();
+		assertEquals(3, empty.encodeSnapshot(0, size).length);
+	}
+
+	@Test
+	public void testPartialSnapshotResyncsClient() throws Exception {
+		Grid server = getGrid(100, 100);
+		Grid client = getGrid(100, 100);
+		Random random = new Random(11);
+		for (int i = 0; i < 3000; i++) {
+			int x = random.nextInt(100);
+			int y = random.nextInt(100);
+			int ownerId = 1 + random.nextInt(3);
+			server.changeState(x, y, true, ownerId);
+			client.changeState(x, y, true, ownerId);
+		}
+		server.transferCells();
+		client.transferCells();
+		// the client diverges in the middle of the board
+		for (int x = 0; x < 100; x++) {
+			client.changeState(x, 50, true, 2);
+		}
+		server.updateGrid();
+		client.updateGrid();
+		assertFalse(server.getChecksum() == client.getChecksum());
+
+		// the client replaces the current state of the requested chunks, like simulation.js
+		int from = 4 * Grid.CHUNK_SIZE;
+		int to = 6 * Grid.CHUNK_SIZE;
+		int[] owners = decodeSnapshot(server.encodeSnapshot(from, to), from, to);
+		for (int index = 0; index < client.getSize(); index++) {
+			Cell cell = client.getCell(index % 100, index / 100);
+			boolean inRange = index >= from && index < to;
+			boolean alive = inRange ? owners[index - from] != -1 : cell.isAlive();
+			int ownerId = inRange && alive ? owners[index - from] : cell.getOwnerId();
+			// cells outside of the range keep their state, but a transfer only keeps
+			// changed cells active, so they are transferred too
+			client.changeState(index % 100, index / 100, alive, ownerId);
+		}
+		client.transferCells();
+
+		assertEquals(server.getChecksum(), client.getChecksum());
+		for (int i = 0; i < 20; i++) {
+			server.updateGrid();
+			client.updateGrid();
+			assertEquals(server.getChecksum(), client.getChecksum());
+		}
+	}
+
+	/**
+	 * Returns owners of cells of a snapshot, -1 for dead cells.
+	 */
+	private static int[] decodeSnapshot(byte[] runs, int from, int to) {
+		int[] owners = new int[to - from];
+		Arrays.fill(owners, -1);
+		int[] offset = {0};
+		int index = 0;
+		while (offset[0] < runs.length) {
+			index += readVarint(runs, offset);
+			int length = readVarint(runs, offset);
+			int ownerId = readVarint(runs, offset);
+			Arrays.fill(owners, index, index + length, ownerId);
+			index += length;
+		}
+		return owners;
+	}
+
+	private static int readVarint(byte[] bytes, int[] offset) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[offset[0]++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	@Test
+	public void testStrongestOwnerTieGoesToFirstNeighbour() throws Exception {
+		Grid grid = getGrid(10, 10);
+		// neighbours are visited column by column, (4, 6) comes before (5, 4) and (6, 6)
+		grid.changeState(6, 6, true, 9);
+		grid.changeState(5, 4, true, 8);
+		grid.changeState(4, 6, true, 7);
+		grid.updateGrid();
+		grid.updateGrid();
+		Cell cell = grid.getCell(5, 5);
+		assertTrue(cell.isAlive());
+		assertEquals(7, cell.getOwnerId());
+	}
+
+	@Test
+	public void testOwnerSlotsAreReusedAfterKillAll() throws Exception {
+		Grid grid = getGrid(10, 10);
+		grid.changeState(1, 1, true, 7);
+		grid.changeState(5, 5, true, 8);
+		grid.updateGrid();
+		grid.killAll(7);
+		grid.changeState(1, 1, true, 9);
+		grid.transferCells();
+		assertEquals(9, grid.getCell(1, 1).getOwnerId());
+		assertEquals(8, grid.getCell(5, 5).getOwnerId());
+		grid.killAll(8);
+		assertFalse(grid.getCell(5, 5).isAlive());
+		assertEquals(0, grid.getCell(5, 5).getOwnerId());
+		assertEquals(9, grid.getCell(1, 1).getOwnerId());
+	}
+
+	@Test
+	public void testChecksumMatchesAliveCells() throws Exception {
+		Grid grid = getGrid(30, 20);
+		grid.changeState(5, 5, true, 1);
+		grid.changeState(5, 6, true, 1);
+		grid.changeState(5, 7, true, 2);
+		grid.changeState(20, 10, true, 2);
+		grid.changeState(21, 10, true, 2);
+		grid.changeState(20, 11, true, 3);
+		for (int i = 0; i < 5; i++) {
+			grid.updateGrid();
+			assertEquals(computeChecksum(grid), grid.getChecksum());
+		}
+		grid.killAll(2);
+		assertEquals(computeChecksum(grid), grid.getChecksum());
+		grid.killAll(1);
+		grid.killAll(3);
+		assertEquals(0, grid.getChecksum());
+	}
+
+	private int computeChecksum(Grid grid) {
+		int checksum = 0;
+		for (Cell cell : grid.getAllCells().values()) {
+			if (!cell.isAlive()) {
+				continue;
+			}
+			checksum ^= Grid.cellHash(cell.getX() + cell.getY() * grid.getWidth(), cell.getOwnerId());
+		}
+		return checksum;
+	}
+
+	/**
+	 * Awards points like {@link BaseGame}, points of an owner never drop below 0,
+	 * so they depend on the order of callbacks.
+	 */
+	private Map<Integer, Integer> countPoints(Grid grid) {
+		Map<Integer, Integer> points = new HashMap<>();
+		grid.onCellDeath(ownerId -> {
+			if (ownerId != -1) {
+				points.merge(ownerId, 1, Integer::sum);
+			}
+		});
+		grid.onCellBirth(ownerId -> points.put(ownerId, Math.max(points.getOrDefault(ownerId, 0) - 1, 0)));
+		return points;
+	}
+
+	@Test
+	public void testReplayedCycleAwardsSamePoints() throws Exception {
+		// this cell ends in a cycle which drops points of its owner to 0 in the middle of a generation,
+		// so the points depend on the order of deaths and births
+		Grid replayedGrid = new Grid(4, 4, RuleFactory.getRule("B18/S137"));
+		Grid computedGrid = new Grid(4, 4, RuleFactory.getRule("B18/S137"));
+		replayedGrid.changeState(0, 0, true, 2);
+		computedGrid.changeState(0, 0, true, 2);
+		Map<Integer, Integer> replayedPoints = countPoints(replayedGrid);
+		Map<Integer, Integer> computedPoints = countPoints(computedGrid);
+		int replayed = 0;
+		for (int i = 0; i < 40; i++) {
+			replayedGrid.updateGrid();
+			replayed += replayedGrid.getCyclePeriod();
+			// a cell is set to its own state, so the grid is never replayed
+			Cell cell = computedGrid.getCell(3, 3);
+			computedGrid.changeState(3, 3, cell.isAlive(), cell.getOwnerId());
+			computedGrid.updateGrid();
+			assertEquals(0, computedGrid.getCyclePeriod());
+			assertEquals("Generation " + i, computedPoints, replayedPoints);
+		}
+		assertTrue("The grid has to end in a cycle", replayed > 0);
+	}
+
+	@Test
+	public void testUpdateGridDoesNotAllocate() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		Grid grid = getGrid(64, 64);
+		// gliders moving the same way never collide, so every update has work to do,
+		// and unlike oscillators they are not replayed as a cycle
+		for(int i = 0; i < grid.getWidth(); i += 8) {
+			for(int j = 0; j < grid.getHeight(); j += 8) {
+				int ownerId = (i + j) % 4;
+				grid.changeState(i + 1, j, true, ownerId);
+				grid.changeState(i + 2, j + 1, true, ownerId);
+				grid.changeState(i, j + 2, true, ownerId);
+				grid.changeState(i + 1, j + 2, true, ownerId);
+				grid.changeState(i + 2, j + 2, true, ownerId);
+			}
+		}
+		for(int i = 0; i < 2000; i++) {
+			grid.updateGrid();
+		}
+
+		long threadId = Thread.currentThread().getId();
+		int iterations = 500;
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		int replayed = 0;
+		for(int i = 0; i < iterations; i++) {
+			grid.updateGrid();
+			replayed += grid.getCyclePeriod();
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+		// a single allocation per update would take at least 16 bytes per iteration,
+		// what remains is noise from the measurement itself
+		assertEquals("Updates have to be computed, not replayed", 0, replayed);
+		assertTrue("Allocated " + allocated + " bytes in " + iterations + " updates", allocated < iterations * 16);
+	}
+
+	@Test
+	public void testGenerationsRuleDyingCells() throws Exception {
+		// Brian's Brain, a dying cell stays dying for one iteration
+		Grid grid = new Grid(10, 10, RuleFactory.getRule("B2/S/C3"));
+		grid.changeState(4, 4, true, 1);
+		grid.changeState(5, 4, true, 1);
+		grid.updateGrid();
+		grid.updateGrid();
+		Map<Point, Cell> cells = grid.getAllCells();
+		assertFalse(cells.get(new Point(4, 4)).isAlive());
+		assertFalse(cells.get(new Point(5, 4)).isAlive());
+		assertTrue(cells.get(new Point(4, 3)).isAlive());
+		assertTrue(cells.get(new Point(5, 5)).isAlive());
+		// dying cells cannot be clicked
+		assertTrue(grid.findClickableCells(new int[]{44, 45}, 2).isEmpty());
+		grid.updateGrid();
+		cells = grid.getAllCells();
+		// dying cells are not counted as alive neighbours and cannot come alive
+		assertFalse(cells.get(new Point(4, 4)).isAlive());
+		assertFalse(cells.get(new Point(5, 4)).isAlive());
+		assertEquals(grid.findClickableCells(new int[]{44, 45}, 2).size(), 2);
+	}
+
+
+	@Test
+	public void testSeedMatchesChangeState() throws Exception {
+		InitialPattern pattern = InitialPattern.random(70, 40, 0.3f, 7);
+		Grid seeded = getGrid(70, 40);
+		Grid changed = getGrid(70, 40);
+		seeded.seed(pattern, 2);
+		for (int y = 0; y < 40; y++) {
+			for (int x = 0; x < 70; x++) {
+				if (pattern.isAlive(x, y)) {
+					changed.changeState(x, y, true, 2);
+				}
+			}
+		}
+		seeded.updateGrid();
+		changed.updateGrid();
+		assertEquals(changed.getChecksum(), seeded.getChecksum());
+		assertEquals(changed.getPopulation(), seeded.getPopulation());
+		assertArrayEquals(changed.getAliveCells(), seeded.getAliveCells());
+		for (int index = 0; index < 70 * 40; index++) {
+			assertEquals(changed.getOwnerId(index), seeded.getOwnerId(index));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package soze.multilife.game;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class InitialPatternTest {
+
+	@Test
+	public void testParseRle() throws Exception {
+		String glider = "#N Glider\n"
+			+ "x = 3, y = 3, rule = B3/S23\n"
+			+ "bob$2bo$3o!\n";
+		InitialPattern pattern = InitialPattern.parseRle(new StringReader(glider));
+		assertEquals(3, pattern.getWidth());
+		assertEquals(3, pattern.getHeight());
+		boolean[][] expected = {
+			{false, true, false},
+			{false, false, true},
+			{true, true, true}
+		};
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 3; x++) {
+				assertEquals(x + ", " + y, expected[y][x], pattern.isAlive(x, y));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRleOutsideOfSize() throws Exception {
+		InitialPattern.parseRle(new StringReader("x = 2, y = 2\n3o!"));
+	}
+
+	@Test
+	public void testFromImage() throws Exception {
+		BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, 4, 2);
+		graphics.setColor(Color.BLACK);
+		graphics.fillRect(1, 1, 2, 1);
+		graphics.dispose();
+		InitialPattern pattern = InitialPattern.fromImage(image);
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < 4; x++) {
+				assertEquals(x + ", " + y, y == 1 && (x == 1 || x == 2), pattern.isAlive(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomDensity() throws Exception {
+		InitialPattern pattern = InitialPattern.random(100, 100, 0.3f, 1);
+		int alive = 0;
+		for (int y = 0; y < 100; y++) {
+			for (int x = 0; x < 100; x++) {
+				alive += pattern.isAlive(x, y) ? 1 : 0;
+			}
+		}
+		assertTrue("alive " + alive, alive > 2700 && alive < 3300);
+		assertFalse(InitialPattern.random(10, 10, 0f).isAlive(0, 0));
+	}
+
+	@Test
+	public void testPatternIsPlacedInCentre() throws Exception {
+		InitialPattern pattern = InitialPattern.parseRle(new StringReader("x = 1, y = 1\no!"));
+		long[] cells = pattern.placeIn(5, 3);
+		assertEquals(2 + 1 * 5, Bits.nextSetBit(cells, 0));
+		assertEquals(-1, Bits.nextSetBit(cells, 2 + 1 * 5 + 1));
+	}
+
+}
@@ -0,0 +1,65 @@
+package soze.multilife.game.rule;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RuleFactoryTest {
+
+	@Test
+	public void testGetRuleByName() throws Exception {
+		assertSame(RuleType.HIGHLIFE.getRule(), RuleFactory.getRule("highlife"));
+	}
+
+	@Test
+	public void testGetRuleByRuleString() throws Exception {
+		Rule rule = RuleFactory.getRule("B36/S23");
+		assertEquals("B36/S23", rule.getRuleString());
+		assertEquals(2, rule.getStates());
+		for (int n = 0; n <= 8; n++) {
+			assertEquals(RuleType.HIGHLIFE.getRule().apply(n, true), rule.apply(n, true));
+			assertEquals(RuleType.HIGHLIFE.getRule().apply(n, false), rule.apply(n, false));
+		}
+	}
+
+	@Test
+	public void testGetRuleIsCached() throws Exception {
+		assertSame(RuleFactory.getRule("B2/S34"), RuleFactory.getRule("b2/s34"));
+	}
+
+	@Test
+	public void testGenerationsRule() throws Exception {
+		Rule rule = RuleFactory.getRule("B2/S/C3");
+		assertEquals(3, rule.getStates());
+		assertEquals("B2/S/C3", rule.getRuleString());
+		assertEquals(1, rule.apply(2, false));
+		assertEquals(-1, rule.apply(2, true));
+	}
+
+	@Test
+	public void testRuleStringTokensInAnyOrder() throws Exception {
+		assertEquals("B3/S23/C4", RuleFactory.getRule("S23/B3/C4").getRuleString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRuleString() throws Exception {
+		RuleFactory.getRule("B3S23");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRuleStringLetter() throws Exception {
+		RuleFactory.getRule("B3/X23");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBirthWithoutNeighboursNotSupported() throws Exception {
+		RuleFactory.getRule("B03/S23");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidNumberOfStates() throws Exception {
+		RuleFactory.getRule("B3/S23/C1");
+	}
+
+}
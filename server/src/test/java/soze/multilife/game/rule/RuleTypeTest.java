@@ -0,0 +1,99 @@
+package soze.multilife.game.rule;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class RuleTypeTest {
+
+	private static final String[] RULE_STRINGS = new String[]{
+		"B3/S23", "B36/S23", "B3/S0123456789", "B35678/S5678", "B368/S245", "B34/S34",
+		"B3/S45678", "B2/S", "B4678/S3567", "B36/S125", "B25/S4", "B1357/S1357"
+	};
+
+	/**
+	 * Reference implementation of a rule, checks sets of digits.
+	 */
+	private int applyReference(String ruleString, int n, boolean alive) {
+		String[] tokens = ruleString.split("/");
+		Set<Integer> birthNumbers = digits(tokens[0]);
+		Set<Integer> surviveNumbers = digits(tokens[1]);
+		if (alive) {
+			if (!surviveNumbers.contains(n)) return -1;
+		} else {
+			if (birthNumbers.contains(n)) return 1;
+		}
+		return 0;
+	}
+
+	private Set<Integer> digits(String text) {
+		Set<Integer> digits = new HashSet<>();
+		for (char c : text.toCharArray()) {
+			if (Character.isDigit(c)) digits.add(c - '0');
+		}
+		return digits;
+	}
+
+	@Test
+	public void testAllRuleTypesMatchRuleStrings() throws Exception {
+		RuleType[] types = RuleType.values();
+		assertEquals(RULE_STRINGS.length, types.length);
+		for (int i = 0; i < types.length; i++) {
+			Rule rule = types[i].getRule();
+			for (int n = 0; n <= 8; n++) {
+				assertEquals(types[i] + " " + n, applyReference(RULE_STRINGS[i], n, true), rule.apply(n, true));
+				assertEquals(types[i] + " " + n, applyReference(RULE_STRINGS[i], n, false), rule.apply(n, false));
+			}
+		}
+	}
+
+	@Test
+	public void testApplyRow() throws Exception {
+		byte[] aliveNeighbours = new byte[18];
+		byte[] alive = new byte[18];
+		for (int i = 0; i < 18; i++) {
+			aliveNeighbours[i] = (byte) (i / 2);
+			alive[i] = (byte) (i % 2);
+		}
+		for (RuleType type : RuleType.values()) {
+			Rule rule = type.getRule();
+			byte[] result = new byte[18];
+			rule.apply(aliveNeighbours, alive, result, 0, 18);
+			for (int i = 0; i < 18; i++) {
+				assertEquals(rule.apply(aliveNeighbours[i], alive[i] == 1), result[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testApplyRowUsesLowestBitOfAlive() throws Exception {
+		byte[] aliveNeighbours = new byte[36];
+		byte[] alive = new byte[36];
+		byte[] values = {2, 3, -1, -2};
+		for (int i = 0; i < 36; i++) {
+			aliveNeighbours[i] = (byte) (i / 4);
+			alive[i] = values[i % 4];
+		}
+		Rule lookupTableRule = RuleType.BASIC.getRule();
+		Rule defaultRule = new Rule() {
+			public int apply(int aliveNeighbours, boolean alive) {
+				return lookupTableRule.apply(aliveNeighbours, alive);
+			}
+
+			public String getRuleString() {
+				return lookupTableRule.getRuleString();
+			}
+		};
+		for (Rule rule : new Rule[]{lookupTableRule, defaultRule}) {
+			byte[] result = new byte[36];
+			rule.apply(aliveNeighbours, alive, result, 0, 36);
+			for (int i = 0; i < 36; i++) {
+				assertEquals(rule.apply(aliveNeighbours[i], (alive[i] & 1) != 0), result[i]);
+			}
+		}
+	}
+
+}
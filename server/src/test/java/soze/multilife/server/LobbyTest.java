@@ -9,6 +9,9 @@ import soze.multilife.events.EventBus;
 import soze.multilife.game.Game;
 import soze.multilife.game.GameFactory;
 import soze.multilife.game.Player;
+import soze.multilife.game.exceptions.OffHeapBudgetExceededException;
+import soze.multilife.messages.incoming.ClickMessage;
+import soze.multilife.messages.outgoing.LoginRefused;
 import soze.multilife.messages.outgoing.PlayerIdentity;
 import soze.multilife.metrics.events.PlayerDisconnectedEvent;
 import soze.multilife.server.connection.Connection;
@@ -81,6 +84,7 @@ public class LobbyTest {
 		Game game = Mockito.mock(Game.class);
 		when(game.getId()).thenReturn(1);
 		when(game.getPlayerColor(1)).thenReturn("#000000");
+		when(game.getRuleString()).thenReturn("B3/S23");
 		when(gameFactory.createGame()).thenReturn(game);
 		Lobby lobby = new Lobby(bus, gameManager, gameFactory);
 
@@ -99,6 +103,28 @@ public class LobbyTest {
 		verify(bus, times(1)).post(isA(PlayerDisconnectedEvent.class));
 	}
 
+	@Test
+	public void testLoginIsRefusedWhenGameCannotBeCreated() throws Exception {
+		when(gameFactory.createGame()).thenThrow(new OffHeapBudgetExceededException("Budget exceeded."));
+		when(gameManager.getFreeGame()).thenReturn(Optional.empty());
+		Lobby lobby = new Lobby(bus, gameManager, gameFactory);
+
+		Connection conn = Mockito.mock(Connection.class);
+		when(conn.getId()).thenReturn(1);
+
+		lobby.onConnect(conn);
+		lobby.addPlayer(new Player(conn.getId(), conn, "Player"));
+
+		verify(conn, times(1)).send(isA(LoginRefused.class));
+		verify(conn, never()).send(isA(PlayerIdentity.class));
+		verify(gameManager, never()).addGame(any(Game.class));
+		verify(bus, never()).post(any());
+
+		// messages of a player who is not in any game are ignored
+		lobby.onMessage(new ClickMessage(), conn.getId());
+		verify(gameManager, never()).acceptMessage(any(), anyInt(), anyInt());
+	}
+
 	@Test
 	public void testValidAddPlayer() throws Exception {
 
@@ -0,0 +1,167 @@
+package soze.multilife.server.gamerunner;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import soze.multilife.game.Game;
+import soze.multilife.messages.incoming.IncomingMessage;
+import soze.multilife.messages.outgoing.OutgoingMessage;
+import soze.multilife.messages.outgoing.TickData;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class GameContainerTest {
+
+	private Game getGame(int id) {
+		Game game = mock(Game.class);
+		when(game.getId()).thenReturn(id);
+		when(game.getPlayers()).thenReturn(Collections.emptyMap());
+		when(game.getPlayerPoints()).thenReturn(Collections.emptyMap());
+		when(game.getClickedCells()).thenReturn(Collections.emptyList());
+		// every game runs once and is removed in the next tick
+		when(game.isScheduledForRemoval()).thenReturn(false, true);
+		return game;
+	}
+
+	@Test
+	public void testGamesAreRunOnTickPool() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+		try {
+			GameContainer container = new GameContainer(1, 1);
+			Game first = getGame(1);
+			Game second = getGame(2);
+			container.addGame(first);
+			container.addGame(second);
+			IncomingMessage message = mock(IncomingMessage.class);
+			container.acceptMessage(message, 5, 1);
+
+			container.start(ticker, pool);
+			// the container stops once both games are removed
+			long deadline = System.currentTimeMillis() + 5000;
+			while (container.isRunning() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+
+			assertFalse(container.isRunning());
+
+			InOrder inOrder = inOrder(first);
+			inOrder.verify(first).acceptMessage(message, 5);
+			inOrder.verify(first).run();
+			inOrder.verify(first).sendMessage(any(TickData.class));
+			verify(second).run();
+			verify(second, never()).acceptMessage(any(IncomingMessage.class), anyInt());
+			verify(first).release();
+			verify(second).release();
+		} finally {
+			ticker.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testNoChecksumIsSentForGamesWithDyingCells() throws Exception {
+		GameContainer container = new GameContainer(1, 1, true);
+		Game game = getGame(1);
+		Game dyingGame = getGame(2);
+		when(game.getChecksum()).thenReturn(7);
+		when(dyingGame.getChecksum()).thenReturn(7);
+		when(dyingGame.hasDyingCells()).thenReturn(true);
+		container.addGame(game);
+		container.addGame(dyingGame);
+
+		container.run();
+
+		TickData tickData = getSentTickData(game);
+		assertTrue(tickData.hasChecksum);
+		assertEquals(7, tickData.checksum);
+		assertFalse(getSentTickData(dyingGame).hasChecksum);
+	}
+
+	private TickData getSentTickData(Game game) {
+		ArgumentCaptor<OutgoingMessage> messages = ArgumentCaptor.forClass(OutgoingMessage.class);
+		verify(game, atLeastOnce()).sendMessage(messages.capture());
+		return (TickData) messages.getAllValues().stream()
+			.filter(message -> message instanceof TickData)
+			.findFirst()
+			.orElseThrow(AssertionError::new);
+	}
+
+	@Test
+	public void testGameIsMoved() throws Exception {
+		GameContainer source = new GameContainer(1, 1);
+		GameContainer target = new GameContainer(2, 1);
+		Game game = getGame(1);
+		when(game.isScheduledForRemoval()).thenReturn(false);
+		source.addGame(game);
+		AtomicBoolean moved = new AtomicBoolean();
+		source.moveGame(1, target, () -> moved.set(true));
+		IncomingMessage message = mock(IncomingMessage.class);
+		source.acceptMessage(message, 5, 1);
+
+		// the source container stops once its only game is moved
+		source.run();
+
+		assertTrue(moved.get());
+		assertEquals(0, source.getGamesCount());
+		assertEquals(1, target.getGamesCount());
+		verify(game, never()).run();
+
+		// messages which still arrive to the source are passed on
+		IncomingMessage lateMessage = mock(IncomingMessage.class);
+		source.acceptMessage(lateMessage, 5, 1);
+		source.run();
+		when(game.isScheduledForRemoval()).thenReturn(false, true);
+		target.run();
+		verify(game).acceptMessage(message, 5);
+		verify(game).acceptMessage(lateMessage, 5);
+		verify(game).run();
+	}
+
+	@Test
+	public void testMessagesOfferedWhileGameIsMovedReachTarget() throws Exception {
+		int messages = 1000;
+		GameContainer source = new GameContainer(1, 1, false, TickOverrunPolicy.SKIP, messages, MessageOverflowPolicy.BACKPRESSURE);
+		GameContainer target = new GameContainer(2, 1, false, TickOverrunPolicy.SKIP, messages, MessageOverflowPolicy.BACKPRESSURE);
+		Game game = getGame(1);
+		source.addGame(game);
+		source.moveGame(1, target, () -> {
+		});
+		IncomingMessage message = mock(IncomingMessage.class);
+		AtomicInteger refused = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < messages; i++) {
+				if (!source.acceptMessage(message, 5, 1)) {
+					refused.incrementAndGet();
+				}
+				if (i == messages / 10) {
+					started.countDown();
+				}
+			}
+		});
+		producer.start();
+		started.await();
+
+		// moves the game while messages are offered
+		source.run();
+		producer.join();
+		target.run();
+
+		assertEquals(0, refused.get());
+		verify(game, times(messages)).acceptMessage(message, 5);
+	}
+
+}
@@ -0,0 +1,150 @@
+package soze.multilife.server.gamerunner;
+
+import soze.multilife.configuration.interfaces.GameConfiguration;
+import soze.multilife.configuration.interfaces.GameRunnerConfiguration;
+import soze.multilife.game.GameFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Runs many small games with few live cells and reports threads, memory and tick jitter.
+ * Not run with tests, run it with the test classpath of the server (it needs its dependencies) as
+ * soze.multilife.server.gamerunner.GameManagerLoadBenchmark [platform|virtual] [games] [seconds].
+ * Virtual threads require Java 21 or newer.
+ */
+public class GameManagerLoadBenchmark {
+
+	private static final int TICK_RATE = 250;
+
+	public static void main(String[] args) throws Exception {
+		boolean virtualThreads = args.length > 0 && args[0].equals("virtual");
+		int gameCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		GameFactory gameFactory = new GameFactory(new BenchmarkConfiguration());
+		GameManager gameManager = new GameManager(new BenchmarkRunnerConfiguration(virtualThreads));
+		long start = System.nanoTime();
+		for (int i = 0; i < gameCount; i++) {
+			gameManager.addGame(gameFactory.createGame());
+		}
+		System.out.printf("%s threads: added %d games in %.1f ms%n",
+			virtualThreads ? "virtual" : "platform", gameCount, (System.nanoTime() - start) / 1e6);
+
+		Thread.sleep(seconds * 1000L);
+
+		List<TickStatistics> statistics = gameManager.getTickStatistics();
+		long ticks = 0;
+		long overruns = 0;
+		long skippedTicks = 0;
+		double jitterSum = 0;
+		double maxJitter = 0;
+		for (TickStatistics containerStatistics : statistics) {
+			ticks += containerStatistics.getTicks();
+			overruns += containerStatistics.getOverruns();
+			skippedTicks += containerStatistics.getSkippedTicks();
+			jitterSum += containerStatistics.getMeanJitter() * containerStatistics.getTicks();
+			maxJitter = Math.max(maxJitter, containerStatistics.getMaxJitter());
+		}
+		Runtime runtime = Runtime.getRuntime();
+		System.out.printf("containers %d, platform threads %d, heap used %d MB%n", statistics.size(),
+			ManagementFactory.getThreadMXBean().getThreadCount(), (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+		System.out.printf("container ticks %d (expected %d), overruns %d, skipped %d, jitter mean %.3f ms, max %.3f ms%n",
+			ticks, (long) statistics.size() * seconds * 1000 / TICK_RATE, overruns, skippedTicks,
+			ticks == 0 ? 0 : jitterSum / ticks, maxJitter);
+		System.exit(0);
+	}
+
+	private static class BenchmarkConfiguration implements GameConfiguration {
+
+		public float getInitialDensity() {
+			return 0.05f;
+		}
+
+		public long getGameDuration() {
+			return 1000L * 60 * 60;
+		}
+
+		public int getMaxPlayers() {
+			return 4;
+		}
+
+		public int getGridWidth() {
+			return 32;
+		}
+
+		public int getGridHeight() {
+			return 32;
+		}
+
+		public String getRules() {
+			return "BASIC";
+		}
+
+		public String getGridEngine() {
+			return "SCALAR";
+		}
+
+		public String getInitialPattern() {
+			return "";
+		}
+	}
+
+	private static class BenchmarkRunnerConfiguration implements GameRunnerConfiguration {
+
+		private final boolean virtualThreads;
+
+		BenchmarkRunnerConfiguration(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+		}
+
+		public int getGamesPerThread() {
+			return 20;
+		}
+
+		public int getTickRate() {
+			return TICK_RATE;
+		}
+
+		public int getParallelGridThreshold() {
+			return 0;
+		}
+
+		public boolean isTickChecksumEnabled() {
+			return false;
+		}
+
+		public long getOffHeapBudget() {
+			return 0;
+		}
+
+		public String getGameStateDirectory() {
+			return "";
+		}
+
+		public String getTickOverrunPolicy() {
+			return "SKIP";
+		}
+
+		public int getTickThreads() {
+			return 0;
+		}
+
+		public boolean isVirtualThreadsEnabled() {
+			return virtualThreads;
+		}
+
+		public long getRebalanceInterval() {
+			return 5000;
+		}
+
+		public int getMessageBufferSize() {
+			return 256;
+		}
+
+		public String getMessageOverflowPolicy() {
+			return "BACKPRESSURE";
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package soze.multilife.server.gamerunner;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class GameManagerTest {
+
+	private ContainerLoad getLoad(long tickTime, Map<Integer, Long> gameTickTimes) {
+		return new ContainerLoad(new GameContainer(1, 1), gameTickTimes.size(), tickTime, 0, 0, gameTickTimes);
+	}
+
+	@Test
+	public void testGameBalancingContainersIsMoved() throws Exception {
+		Map<Integer, Long> gameTickTimes = new HashMap<>();
+		gameTickTimes.put(1, 90_000_000L);
+		gameTickTimes.put(2, 40_000_000L);
+		gameTickTimes.put(3, 20_000_000L);
+		ContainerLoad from = getLoad(150_000_000L, gameTickTimes);
+		ContainerLoad to = getLoad(10_000_000L, new HashMap<>());
+		// game 1 leaves 60 ms and 100 ms, better than 110 ms and 50 ms with game 2
+		assertEquals(1, GameManager.chooseGameToMove(from, to));
+		to = getLoad(70_000_000L, new HashMap<>());
+		// 110 ms and 110 ms with game 2, 130 ms and 90 ms with game 3
+		assertEquals(2, GameManager.chooseGameToMove(from, to));
+	}
+
+	@Test
+	public void testGameIsNotMovedIfItDoesNotHelp() throws Exception {
+		Map<Integer, Long> gameTickTimes = new HashMap<>();
+		gameTickTimes.put(1, 60_000_000L);
+		gameTickTimes.put(2, 40_000_000L);
+		ContainerLoad from = getLoad(100_000_000L, gameTickTimes);
+		ContainerLoad to = getLoad(95_000_000L, new HashMap<>());
+		assertEquals(-1, GameManager.chooseGameToMove(from, to));
+	}
+
+	@Test
+	public void testLastGameIsNotMoved() throws Exception {
+		Map<Integer, Long> gameTickTimes = new HashMap<>();
+		gameTickTimes.put(1, 100_000_000L);
+		ContainerLoad from = getLoad(100_000_000L, gameTickTimes);
+		ContainerLoad to = getLoad(0, new HashMap<>());
+		assertEquals(-1, GameManager.chooseGameToMove(from, to));
+	}
+
+}
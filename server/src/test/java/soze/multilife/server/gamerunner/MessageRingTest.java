@@ -0,0 +1,103 @@
+package soze.multilife.server.gamerunner;
+
+import org.junit.Test;
+import soze.multilife.messages.incoming.IncomingMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class MessageRingTest {
+
+	private final IncomingMessage message = mock(IncomingMessage.class);
+
+	private List<Integer> drainPlayerIds(MessageRing ring) {
+		List<Integer> playerIds = new ArrayList<>();
+		ring.drain((message, playerId) -> playerIds.add(playerId));
+		return playerIds;
+	}
+
+	@Test
+	public void testCapacityIsRoundedUp() throws Exception {
+		assertEquals(1, new MessageRing(1, MessageOverflowPolicy.BACKPRESSURE).getCapacity());
+		assertEquals(8, new MessageRing(5, MessageOverflowPolicy.BACKPRESSURE).getCapacity());
+		assertEquals(8, new MessageRing(8, MessageOverflowPolicy.BACKPRESSURE).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() throws Exception {
+		new MessageRing(0, MessageOverflowPolicy.BACKPRESSURE);
+	}
+
+	@Test
+	public void testBackpressureRefusesNewMessages() throws Exception {
+		MessageRing ring = new MessageRing(4, MessageOverflowPolicy.BACKPRESSURE);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer(message, i));
+		}
+		assertFalse(ring.offer(message, 4));
+		assertEquals(1, ring.getDroppedCount());
+		assertEquals(List.of(0, 1, 2, 3), drainPlayerIds(ring));
+		assertTrue(ring.offer(message, 5));
+		assertEquals(List.of(5), drainPlayerIds(ring));
+	}
+
+	@Test
+	public void testDropOldestKeepsNewMessages() throws Exception {
+		MessageRing ring = new MessageRing(4, MessageOverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(ring.offer(message, i));
+		}
+		assertEquals(6, ring.getDroppedCount());
+		assertEquals(List.of(6, 7, 8, 9), drainPlayerIds(ring));
+		assertTrue(drainPlayerIds(ring).isEmpty());
+	}
+
+	@Test
+	public void testMessagesOfManyProducersAreTakenInOrder() throws Exception {
+		int producers = 4;
+		int messagesPerProducer = 20000;
+		MessageRing ring = new MessageRing(64, MessageOverflowPolicy.BACKPRESSURE);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int producer = 0; producer < producers; producer++) {
+			int playerId = producer;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < messagesPerProducer; i++) {
+					// the sequence number of a message is encoded in its player id
+					while (!ring.offer(message, i * producers + playerId)) {
+						Thread.yield();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		int[] next = new int[producers];
+		int[] received = new int[1];
+		while (received[0] < producers * messagesPerProducer) {
+			ring.drain((message, id) -> {
+				int producer = id % producers;
+				assertEquals(next[producer], id / producers);
+				next[producer]++;
+				received[0]++;
+			});
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int producer = 0; producer < producers; producer++) {
+			assertEquals(messagesPerProducer, next[producer]);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package soze.multilife.server.gamerunner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TickSchedulerTest {
+
+	private static final long PERIOD = 100;
+
+	private long now = 1000;
+	private final List<Long> starts = new ArrayList<>();
+
+	private TickScheduler getScheduler(TickOverrunPolicy policy) {
+		return new TickScheduler(PERIOD, policy, () -> now, nanos -> now += nanos);
+	}
+
+	/**
+	 * Runs ticks taking given times.
+	 */
+	private void runTicks(TickScheduler scheduler, long... durations) throws Exception {
+		for (long duration : durations) {
+			scheduler.awaitNextTick();
+			starts.add(now);
+			now += duration;
+		}
+	}
+
+	@Test
+	public void testTicksKeepFixedRate() throws Exception {
+		TickScheduler scheduler = getScheduler(TickOverrunPolicy.SKIP);
+		runTicks(scheduler, 10, 60, 99, 0);
+		assertEquals(1000L, (long) starts.get(0));
+		assertEquals(1100L, (long) starts.get(1));
+		assertEquals(1200L, (long) starts.get(2));
+		assertEquals(1300L, (long) starts.get(3));
+		assertEquals(4, scheduler.getStatistics().getTicks());
+		assertEquals(0, scheduler.getStatistics().getOverruns());
+	}
+
+	@Test
+	public void testSkipDropsMissedTicks() throws Exception {
+		TickScheduler scheduler = getScheduler(TickOverrunPolicy.SKIP);
+		runTicks(scheduler, 250, 10, 10);
+		assertEquals(1300L, (long) starts.get(1));
+		assertEquals(1400L, (long) starts.get(2));
+		TickStatistics statistics = scheduler.getStatistics();
+		assertEquals(1, statistics.getOverruns());
+		assertEquals(2, statistics.getSkippedTicks());
+	}
+
+	@Test
+	public void testCatchUpRunsMissedTicks() throws Exception {
+		TickScheduler scheduler = getScheduler(TickOverrunPolicy.CATCH_UP);
+		runTicks(scheduler, 250, 10, 10, 10, 10);
+		assertEquals(1250L, (long) starts.get(1));
+		assertEquals(1260L, (long) starts.get(2));
+		assertEquals(1300L, (long) starts.get(3));
+		assertEquals(1400L, (long) starts.get(4));
+		TickStatistics statistics = scheduler.getStatistics();
+		assertEquals(2, statistics.getOverruns());
+		assertEquals(0, statistics.getSkippedTicks());
+	}
+
+	@Test
+	public void testCatchUpSkipsTicksTooFarBehind() throws Exception {
+		TickScheduler scheduler = getScheduler(TickOverrunPolicy.CATCH_UP);
+		runTicks(scheduler, PERIOD * 10, 0);
+		assertEquals(10 - 1 - TickScheduler.MAX_CATCH_UP_TICKS, scheduler.getStatistics().getSkippedTicks());
+	}
+
+}